@@ -69,6 +69,30 @@ public class AppActions {
         prefsItem.addActionListener(e -> openPrefs.run());
     }
 
+    public void wireAlgorithmMenu(java.util.Map<DiffEngine.Strategy, JRadioButtonMenuItem> items) {
+        for (java.util.Map.Entry<DiffEngine.Strategy, JRadioButtonMenuItem> entry : items.entrySet()) {
+            DiffEngine.Strategy strategy = entry.getKey();
+            entry.getValue().addActionListener(e -> {
+                diffController.setStrategy(strategy);
+                app.recompute();
+            });
+        }
+    }
+
+    public void wireDetectMovesItem(JCheckBoxMenuItem item) {
+        item.addActionListener(e -> {
+            diffController.setDetectMoves(item.isSelected());
+            app.recompute();
+        });
+    }
+
+    /** Comparison toggles next to "Ignore whitespace"; each one re-runs the diff. */
+    public void wireCompareToggles(JToggleButton... toggles) {
+        for (JToggleButton toggle : toggles) {
+            toggle.addActionListener(e -> app.recompute());
+        }
+    }
+
     public void installUndoShortcut(JComponent c) {
         int mask = java.awt.Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
         KeyStroke undoStroke = KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, mask);
@@ -0,0 +1,281 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * LCS over integer line ids using the bit-parallel row recurrence (Allison–Dix / Hyyrö):
+ * one bit per line of A, 64 lines per word, so a row of the LCS table costs n/64 word ops.
+ * Matches are recovered Hirschberg-style: split B in half, score every split of A with a
+ * forward and a reverse pass, recurse on both halves. Memory stays O(n + m), plus a
+ * match-mask table for inputs with many repeated lines (see {@link #rowScores}).
+ * No use of ++ or -- operators (per user request).
+ */
+final class BitParallelLcs {
+
+    /** Below this many cells a plain DP table is cheaper than another Hirschberg level. */
+    private static final int SMALL_TABLE = 1024;
+    /** Largest match-mask table, in words (8 MB); larger inputs build masks per row. */
+    private static final int MASK_TABLE_WORDS = 1 << 20;
+
+    private final int[] a;
+    private final int[] b;
+    private final int[] head;   // per id: first A position in the current region, -1 if none
+    private final int[] next;   // per A position: next position with the same id
+    private final int[] slot;   // per id: row of the mask table in the current pass, -1 if none
+    private final int[] slotIds;
+    private long[] table = new long[0];
+    private final long[] v;
+    private final long[] mask;
+    private final int[] fwd;
+    private final int[] bwd;
+    private final DiffEngine.CancelToken cancel;
+
+    private int[] pairs = new int[64];
+    private int pairCount;
+
+    /** The token is polled once per row of B, so even one huge block can be abandoned. */
+    BitParallelLcs(int[] a, int[] b, int maxId, DiffEngine.CancelToken cancel) {
+        this.a = a;
+        this.b = b;
+        this.cancel = cancel;
+        this.head = new int[maxId + 1];
+        this.next = new int[a.length];
+        this.slot = new int[maxId + 1];
+        this.slotIds = new int[a.length];
+        int words = (a.length >>> 6) + 1;
+        this.v = new long[words];
+        this.mask = new long[words];
+        this.fwd = new int[a.length + 1];
+        this.bwd = new int[a.length + 1];
+        Arrays.fill(head, -1);
+        Arrays.fill(slot, -1);
+    }
+
+    int pairCount() { return pairCount; }
+    int pairA(int k) { return pairs[2 * k]; }
+    int pairB(int k) { return pairs[2 * k + 1]; }
+    void clear() { pairCount = 0; }
+
+    /** Appends the (aIndex, bIndex) pairs of an LCS of a[aLo,aHi) and b[bLo,bHi) in ascending order. */
+    void collect(int aLo, int aHi, int bLo, int bHi) {
+        int pre = 0;
+        while (aLo + pre < aHi && bLo + pre < bHi && a[aLo + pre] == b[bLo + pre]) {
+            addPair(aLo + pre, bLo + pre);
+            pre = pre + 1;
+        }
+        aLo = aLo + pre;
+        bLo = bLo + pre;
+        int suf = 0;
+        while (aHi - suf > aLo && bHi - suf > bLo && a[aHi - suf - 1] == b[bHi - suf - 1]) {
+            suf = suf + 1;
+        }
+        int aEnd = aHi - suf;
+        int bEnd = bHi - suf;
+
+        int n = aEnd - aLo;
+        int m = bEnd - bLo;
+        if (n > 0 && m > 0) {
+            if ((long) n * m <= SMALL_TABLE) {
+                smallTable(aLo, aEnd, bLo, bEnd);
+            } else if (m == 1) {
+                int i = aLo;
+                while (i < aEnd && a[i] != b[bLo]) {
+                    i = i + 1;
+                }
+                if (i < aEnd) addPair(i, bLo);
+            } else {
+                int mid = bLo + m / 2;
+                int split = bestSplit(aLo, aEnd, bLo, mid, bEnd);
+                collect(aLo, aLo + split, bLo, mid);
+                collect(aLo + split, aEnd, mid, bEnd);
+            }
+        }
+
+        int k = 0;
+        while (k < suf) {
+            addPair(aEnd + k, bEnd + k);
+            k = k + 1;
+        }
+    }
+
+    /** Split point i in [0, n] of A maximising LCS(A[..i), B[bLo,mid)) + LCS(A[i..), B[mid,bHi)). */
+    private int bestSplit(int aLo, int aHi, int bLo, int mid, int bHi) {
+        int n = aHi - aLo;
+        // chain A positions per id, ascending
+        int i = aHi - 1;
+        while (i >= aLo) {
+            next[i] = head[a[i]];
+            head[a[i]] = i;
+            i = i - 1;
+        }
+
+        rowScores(aLo, aHi, bLo, mid, false, fwd);
+        rowScores(aLo, aHi, mid, bHi, true, bwd);
+
+        i = aLo;
+        while (i < aHi) {
+            head[a[i]] = -1;
+            i = i + 1;
+        }
+
+        int best = 0;
+        int bestScore = -1;
+        int s = 0;
+        while (s <= n) {
+            int score = fwd[s] + bwd[n - s];
+            if (score > bestScore) {
+                bestScore = score;
+                best = s;
+            }
+            s = s + 1;
+        }
+        return best;
+    }
+
+    /**
+     * Runs the bit-parallel recurrence of A[aLo,aHi) against B[bLo,bHi) and writes
+     * out[i] = LCS(first i lines of A, B range) for i in [0, n]. With reverse set, A and
+     * B are both read back to front, so out[i] scores the last i lines of A.
+     * A row's match mask comes from a table with one mask per distinct id of A when that
+     * table is small and cheaper to fill than walking each row's occurrence chain, which
+     * repeated lines make long; otherwise it is built from the chain and cleared again.
+     */
+    private void rowScores(int aLo, int aHi, int bLo, int bHi, boolean reverse, int[] out) {
+        int n = aHi - aLo;
+        int words = (n >>> 6) + 1;
+        Arrays.fill(v, 0, words, -1L);
+
+        int distinct = 0;
+        int i = aLo;
+        while (i < aHi) {
+            if (slot[a[i]] < 0) {
+                slot[a[i]] = distinct;
+                slotIds[distinct] = a[i];
+                distinct = distinct + 1;
+            }
+            i = i + 1;
+        }
+        long cells = (long) distinct * words;
+        boolean useTable = cells <= MASK_TABLE_WORDS && (long) distinct * distinct < 128L * (bHi - bLo);
+        if (useTable) {
+            if (table.length < cells) {
+                table = new long[(int) cells];
+            } else {
+                Arrays.fill(table, 0, (int) cells, 0L);
+            }
+            i = aLo;
+            while (i < aHi) {
+                int bit = reverse ? (aHi - 1 - i) : (i - aLo);
+                int at = slot[a[i]] * words + (bit >>> 6);
+                table[at] = table[at] | (1L << bit);
+                i = i + 1;
+            }
+        }
+
+        int j = reverse ? bHi - 1 : bLo;
+        while (reverse ? j >= bLo : j < bHi) {
+            cancel.check();
+            if (useTable) {
+                int row = slot[b[j]];
+                if (row >= 0) {
+                    advance(table, row * words, words);
+                }
+            } else {
+                int p = head[b[j]];
+                if (p >= 0) {
+                    // build the match mask for this line of B
+                    int q = p;
+                    while (q >= 0) {
+                        int bit = reverse ? (aHi - 1 - q) : (q - aLo);
+                        mask[bit >>> 6] = mask[bit >>> 6] | (1L << bit);
+                        q = next[q];
+                    }
+                    advance(mask, 0, words);
+                    q = p;
+                    while (q >= 0) {
+                        int bit = reverse ? (aHi - 1 - q) : (q - aLo);
+                        mask[bit >>> 6] = 0L;
+                        q = next[q];
+                    }
+                }
+            }
+            j = reverse ? j - 1 : j + 1;
+        }
+
+        int k = 0;
+        while (k < distinct) {
+            slot[slotIds[k]] = -1;
+            k = k + 1;
+        }
+
+        // zero bits are LCS increments along A
+        out[0] = 0;
+        i = 0;
+        int acc = 0;
+        while (i < n) {
+            if ((v[i >>> 6] & (1L << i)) == 0L) {
+                acc = acc + 1;
+            }
+            i = i + 1;
+            out[i] = acc;
+        }
+    }
+
+    /** V = (V + (V & M)) | (V & ~M) for the match mask M at m[off], carrying across words. */
+    private void advance(long[] m, int off, int words) {
+        long carry = 0L;
+        int w = 0;
+        while (w < words) {
+            long vw = v[w];
+            long mw = m[off + w];
+            long uw = vw & mw;
+            long sum = vw + uw + carry;
+            carry = (Long.compareUnsigned(sum, vw) < 0 || (carry != 0L && sum == vw)) ? 1L : 0L;
+            v[w] = sum | (vw & ~mw);
+            w = w + 1;
+        }
+    }
+
+    private void smallTable(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int cols = m + 1;
+        int[] dp = new int[(n + 1) * cols];
+        int i = n - 1;
+        while (i >= 0) {
+            int j = m - 1;
+            while (j >= 0) {
+                if (a[aLo + i] == b[bLo + j]) {
+                    dp[i * cols + j] = 1 + dp[(i + 1) * cols + j + 1];
+                } else {
+                    dp[i * cols + j] = Math.max(dp[(i + 1) * cols + j], dp[i * cols + j + 1]);
+                }
+                j = j - 1;
+            }
+            i = i - 1;
+        }
+        int ia = 0;
+        int ib = 0;
+        while (ia < n && ib < m) {
+            if (a[aLo + ia] == b[bLo + ib]) {
+                addPair(aLo + ia, bLo + ib);
+                ia = ia + 1;
+                ib = ib + 1;
+            } else if (dp[(ia + 1) * cols + ib] >= dp[ia * cols + ib + 1]) {
+                ia = ia + 1;
+            } else {
+                ib = ib + 1;
+            }
+        }
+    }
+
+    private void addPair(int ai, int bi) {
+        int at = pairCount * 2;
+        if (at + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[at] = ai;
+        pairs[at + 1] = bi;
+        pairCount = pairCount + 1;
+    }
+}
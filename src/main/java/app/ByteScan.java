@@ -0,0 +1,87 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Newline search and line hashing over the bytes of a (mapped) buffer, used where
+ * files are tokenized straight from their mapping. The search reads eight bytes per
+ * step and finds '\n' with SWAR bit tricks. A build with {@code -Pvector} adds
+ * VectorScan, which searches over SIMD lanes; it is used when that class is present,
+ * the JVM was started with {@code --add-modules jdk.incubator.vector}, and
+ * {@code -Dmirrormatch.vector=false} is not set. Both give the same results. Hashes take eight bytes per multiply; they only need to agree within one
+ * run, e.g. between the two files of a {@link StreamingDiff}.
+ * Indexes are absolute buffer indexes; the buffer's position and limit are ignored.
+ * No use of ++ or -- operators (per user request).
+ */
+final class ByteScan {
+
+    /** A newline search over a buffer, as {@link #indexOf}. */
+    interface Finder {
+        int indexOf(ByteBuffer buf, int from, int to);
+    }
+
+    /** The SIMD search, or null when it is not built, not resolved or switched off. */
+    private static final Finder VECTOR = loadVector();
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+    private static final long NEWLINES = ONES * '\n';
+    private static final long PRIME = 0x9e3779b97f4a7c15L;
+
+    private ByteScan() {}
+
+    private static Finder loadVector() {
+        if ("false".equals(System.getProperty("mirrormatch.vector"))) return null;
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return (Finder) Class.forName("app.VectorScan").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /** Index of the first '\n' in [from, to), or to if there is none. */
+    static int indexOf(ByteBuffer buf, int from, int to) {
+        if (VECTOR != null) return VECTOR.indexOf(buf, from, to);
+        return indexOfSwar(buf, from, to);
+    }
+
+    static int indexOfSwar(ByteBuffer buf, int from, int to) {
+        boolean big = buf.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        while (i + 8 <= to) {
+            long m = newlineMask(buf.getLong(i));
+            if (m != 0) {
+                return i + ((big ? Long.numberOfLeadingZeros(m) : Long.numberOfTrailingZeros(m)) >>> 3);
+            }
+            i = i + 8;
+        }
+        while (i < to && buf.get(i) != '\n') {
+            i = i + 1;
+        }
+        return i;
+    }
+
+    /** High bit set in every byte of word that is '\n'; exact, no carries between bytes. */
+    private static long newlineMask(long word) {
+        long v = word ^ NEWLINES;
+        return ~(((v & LOW7) + LOW7) | v | LOW7);
+    }
+
+    /** 64-bit hash of the bytes [from, to), mixed with their length. */
+    static long hash(ByteBuffer buf, int from, int to) {
+        long h = (to - from) * PRIME;
+        int i = from;
+        while (i + 8 <= to) {
+            h = Long.rotateLeft((h ^ buf.getLong(i)) * PRIME, 29);
+            i = i + 8;
+        }
+        long tail = 0;
+        while (i < to) {
+            tail = (tail << 8) | (buf.get(i) & 0xff);
+            i = i + 1;
+        }
+        return LineIndex.mix64((h ^ tail) * PRIME);
+    }
+}
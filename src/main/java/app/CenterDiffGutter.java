@@ -10,7 +10,8 @@ import java.util.List;
 
 /**
  * A slim center gutter drawn between editors that shows clickable arrows
- * per changed line (▶ copies LEFT→RIGHT, ◀ copies RIGHT→LEFT).
+ * per changed line (▶ copies LEFT→RIGHT, ◀ copies RIGHT→LEFT). A moved block gets a
+ * single arrow at its first line, which applies the whole move.
  *
  * It asks the hosting app (callbacks) to perform the copy when clicked.
  * No ++/-- used in this class.
@@ -30,7 +31,9 @@ public class CenterDiffGutter extends JComponent {
     private static class Marker {
         int line;
         boolean leftToRight; // true = ▶   false = ◀
+        boolean move;        // first line of a MOVE row
         Marker(int line, boolean l2r) { this.line = line; this.leftToRight = l2r; }
+        Marker(int line, boolean l2r, boolean move) { this(line, l2r); this.move = move; }
     }
 
     private static class VisibleMarker {
@@ -46,8 +49,10 @@ public class CenterDiffGutter extends JComponent {
         MarkerRun(Marker m, int y, int count) { this.marker = m; this.yCenter = y; this.count = count; }
     }
 
-    private final List<Marker> markersL2R = new ArrayList<>();
-    private final List<Marker> markersR2L = new ArrayList<>();
+    /** Lines this far outside an editor's visible rows still get markers (pills overhang). */
+    private static final int OFFSCREEN_LINES = 2;
+
+    private HunkTable hunks;
     private boolean groupRuns = false;
 
     // styling
@@ -55,6 +60,7 @@ public class CenterDiffGutter extends JComponent {
     private final Color border = new Color(220, 225, 236);
     private final Color arrowL2R = new Color(76, 132, 255);   // blue-ish
     private final Color arrowR2L = new Color(168, 85, 247);   // violet-ish
+    private final Color arrowMove = new Color(20, 150, 140);  // teal
     private final Font mono = new Font(Font.MONOSPACED, Font.PLAIN, 12);
     private final Color stackGlow = new Color(120, 140, 200, 90);
 
@@ -90,34 +96,11 @@ public class CenterDiffGutter extends JComponent {
     public void setHandler(ArrowHandler handler) { this.handler = handler; }
 
     /**
-     * Rebuild markers from current diff (compute y positions from editors).
-     * Provide all hunks (EQUAL/DELETE/INSERT/CHANGE) and we’ll populate arrows
-     * for the “change-like” parts.
+     * Rebuild markers from current diff. Markers are looked up per paint for the
+     * visible lines only, so this just keeps the table.
      */
-    public void rebuildMarkers(List<DiffEngine.Hunk> hunks) {
-        markersL2R.clear();
-        markersR2L.clear();
-        try {
-            javax.swing.text.Element rootL = left.getDocument().getDefaultRootElement();
-            javax.swing.text.Element rootR = right.getDocument().getDefaultRootElement();
-
-            java.util.Set<Integer> leftLines = new java.util.LinkedHashSet<>();
-            java.util.Set<Integer> rightLines = new java.util.LinkedHashSet<>();
-
-            int hl = hunks.size();
-            int i = 0;
-            while (i < hl) {
-                DiffEngine.Hunk h = hunks.get(i);
-                if (h.type() != DiffEngine.HunkType.EQUAL) {
-                    rangeToList(h.leftStart(), h.leftEnd(), leftLines);
-                    rangeToList(h.rightStart(), h.rightEnd(), rightLines);
-                }
-                i = i + 1;
-            }
-
-            for (int line : leftLines) markersL2R.add(new Marker(line, true));  // left -> right
-            for (int line : rightLines) markersR2L.add(new Marker(line, false)); // right -> left
-        } catch (Exception ignored) {}
+    public void rebuildMarkers(HunkTable hunks) {
+        this.hunks = hunks;
         repaint();
     }
 
@@ -133,14 +116,6 @@ public class CenterDiffGutter extends JComponent {
         }
     }
 
-    private void rangeToList(int start, int end, java.util.Set<Integer> into) {
-        int i = start;
-        while (i < end) {
-            into.add(i);
-            i = i + 1;
-        }
-    }
-
     private Marker findMarkerAtPoint(int x, int y) {
         int w = getWidth();
         int laneW = Math.max(16, (w - 12) / 2);
@@ -208,34 +183,59 @@ public class CenterDiffGutter extends JComponent {
 
     private List<VisibleMarker> visibleMarkers() {
         List<VisibleMarker> out = new ArrayList<>();
-        addVisibleForList(markersL2R, left, out);
-        addVisibleForList(markersR2L, right, out);
+        if (hunks != null) {
+            addVisibleForSide(true, left, out);   // left -> right
+            addVisibleForSide(false, right, out); // right -> left
+        }
         out.sort(java.util.Comparator.comparingInt(vm -> vm.y));
         return out;
     }
 
-    private void addVisibleForList(List<Marker> src, JTextArea area, List<VisibleMarker> out) {
-        int i = 0;
-        int n = src.size();
-        while (i < n) {
-            Marker mk = src.get(i);
-            try {
-                javax.swing.text.Element root = area.getDocument().getDefaultRootElement();
-                int lc = root.getElementCount();
-                if (lc <= 0) { i = i + 1; continue; }
-                int idx = Math.max(0, Math.min(mk.line, lc - 1));
-                Rectangle r = area.modelToView2D(root.getElement(idx).getStartOffset()).getBounds();
-                Point p = new Point(0, r.y + (r.height / 2));
-                SwingUtilities.convertPointToScreen(p, area);
-                SwingUtilities.convertPointFromScreen(p, this);
-                if (p.y > -40 && p.y < getHeight() + 40) {
-                    out.add(new VisibleMarker(mk, p.y));
+    /** Markers for the changed lines of one editor that fall inside its visible rows. */
+    private void addVisibleForSide(boolean leftSide, JTextArea area, List<VisibleMarker> out) {
+        javax.swing.text.Element root = area.getDocument().getDefaultRootElement();
+        int lc = root.getElementCount();
+        if (lc <= 0) return;
+        Rectangle vr = area.getVisibleRect();
+        int first = root.getElementIndex(area.viewToModel2D(new Point(0, vr.y)));
+        int last = root.getElementIndex(area.viewToModel2D(new Point(0, vr.y + vr.height)));
+        first = Math.max(0, first - OFFSCREEN_LINES);
+        last = last + OFFSCREEN_LINES;
+
+        int row = hunks.firstRowEndingAfter(leftSide, first);
+        if (row < 0) return;
+        int rows = hunks.size();
+        while (row < rows && hunks.start(leftSide, row) <= last) {
+            if (hunks.type(row) == DiffEngine.HunkType.MOVE) {
+                int start = hunks.start(leftSide, row);
+                if (start >= first) {
+                    addVisible(new Marker(start, leftSide, true), area, root, lc, out);
+                }
+            } else if (hunks.type(row) != DiffEngine.HunkType.EQUAL) {
+                int line = Math.max(first, hunks.start(leftSide, row));
+                int end = Math.min(last + 1, hunks.end(leftSide, row));
+                while (line < end) {
+                    addVisible(new Marker(line, leftSide), area, root, lc, out);
+                    line = line + 1;
                 }
-            } catch (Exception ignored) {}
-            i = i + 1;
+            }
+            row = row + 1;
         }
     }
 
+    private void addVisible(Marker mk, JTextArea area, javax.swing.text.Element root, int lc, List<VisibleMarker> out) {
+        try {
+            int idx = Math.max(0, Math.min(mk.line, lc - 1));
+            Rectangle r = area.modelToView2D(root.getElement(idx).getStartOffset()).getBounds();
+            Point p = new Point(0, r.y + (r.height / 2));
+            SwingUtilities.convertPointToScreen(p, area);
+            SwingUtilities.convertPointFromScreen(p, this);
+            if (p.y > -40 && p.y < getHeight() + 40) {
+                out.add(new VisibleMarker(mk, p.y));
+            }
+        } catch (Exception ignored) {}
+    }
+
     private List<MarkerRun> runsFor(List<VisibleMarker> vis, boolean l2r, int pillH) {
         List<MarkerRun> runs = new ArrayList<>();
         int i = 0;
@@ -250,7 +250,8 @@ public class CenterDiffGutter extends JComponent {
                 VisibleMarker next = vis.get(runEnd + 1);
                 boolean sameDir = next.marker.leftToRight == l2r;
                 boolean consecutive = next.marker.line == vis.get(runEnd).marker.line + 1;
-                if (sameDir && consecutive) runEnd = runEnd + 1;
+                boolean sameKind = !next.marker.move && !vis.get(runEnd).marker.move;
+                if (sameDir && consecutive && sameKind) runEnd = runEnd + 1;
                 else break;
             }
 
@@ -310,7 +311,7 @@ public class CenterDiffGutter extends JComponent {
                 g2.fillRoundRect(rx, yTop, laneW, pillH, arc, arc);
 
                 g2.setFont(mono);
-                g2.setColor(l2r ? arrowL2R : arrowR2L);
+                g2.setColor(vm.marker.move ? arrowMove : l2r ? arrowL2R : arrowR2L);
                 String arrow = l2r ? "▶" : "◀";
                 int sw = g2.getFontMetrics().stringWidth(arrow);
                 int sh = g2.getFontMetrics().getAscent();
@@ -333,7 +334,7 @@ public class CenterDiffGutter extends JComponent {
             g2.fillRoundRect(rx, yTop, laneW, pillH, arc, arc);
 
             g2.setFont(mono);
-            g2.setColor(l2r ? arrowL2R : arrowR2L);
+            g2.setColor(run.marker.move ? arrowMove : l2r ? arrowL2R : arrowR2L);
             String arrow = l2r ? "▶" : "◀";
             int sw = g2.getFontMetrics().stringWidth(arrow);
             int sh = g2.getFontMetrics().getAscent();
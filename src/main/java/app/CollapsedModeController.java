@@ -38,13 +38,22 @@ public class CollapsedModeController {
         return collapsedMode;
     }
 
+    /**
+     * Diff-only mode swaps the full texts out of the editors, which a paged document
+     * cannot do without reading the whole file into memory.
+     */
+    public boolean canCollapse() {
+        return !(left.area().getDocument() instanceof PagedDocument)
+                && !(right.area().getDocument() instanceof PagedDocument);
+    }
+
     public boolean enter() {
         if (collapsedMode) return true;
-        if (session.changes().isEmpty()) {
+        if (!canCollapse() || session.changes().isEmpty()) {
             return false;
         }
-        fullLeftBackup = List.of(left.area().getText().split("\n", -1));
-        fullRightBackup = List.of(right.area().getText().split("\n", -1));
+        fullLeftBackup = LineIndex.of(left.area().getText()).asList();
+        fullRightBackup = LineIndex.of(right.area().getText()).asList();
         collapsedHunks = new ArrayList<>(session.changes());
 
         collapseIntoEditors(true);
@@ -68,9 +77,11 @@ public class CollapsedModeController {
         } finally {
             diffController.setSuppressDocEvents(false);
         }
-        DiffEngine.Result diff = DiffEngine.diffLines(left.area().getText(), right.area().getText());
+        LineIndex leftIndex = LineIndex.of(left.area().getText());
+        LineIndex rightIndex = LineIndex.of(right.area().getText());
+        DiffEngine.Result diff = DiffEngine.diffLines(leftIndex, rightIndex);
         session.updateDiff(diff);
-        session.updateTexts(left.area().getText(), right.area().getText());
+        session.updateTexts(leftIndex, rightIndex);
         diffController.refreshUIAfterSessionChange();
     }
 
@@ -1,6 +1,7 @@
 package app;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Highlighter;
 import java.awt.*;
@@ -16,11 +17,26 @@ import static app.DiffEngine.HunkType;
  */
 public class DiffController implements DocEventSuppressor {
 
+    /** Keeps pathological inputs (e.g. two unrelated large files) from blocking the UI. */
+    public static final DiffEngine.Budget DEFAULT_BUDGET = new DiffEngine.Budget(0, 2000, 256L * 1024 * 1024);
+    /** Edited windows up to this many lines (both sides) are re-diffed in place on the EDT. */
+    private static final int INCREMENTAL_MAX_WINDOW = 2000;
+    /** Time an EDT re-diff may take before it is handed to a background diff instead. */
+    private static final long INCREMENTAL_MAX_MILLIS = 30;
+    private static final int INCREMENTAL_DELAY_MS = 80;
+    /** Typing pause after which incremental updates are auto-saved. */
+    private static final int AUTOSAVE_IDLE_MS = 2000;
+    /** Lines above and below the viewport that also get inline highlights. */
+    private static final int INLINE_MARGIN_LINES = 40;
+    /** Texts longer than this (in chars) are diffed from disk by {@link StreamingDiff}. */
+    static final int LARGE_TEXT_CHARS = 2000000;
+
     private final EditorPane left;
     private final EditorPane right;
     private final DiffSession session;
     private final CenterDiffGutter gutter;
-    private final Supplier<Boolean> ignoreWhitespaceSupplier;
+    /** {@link LineCompare} flags for the next diff. */
+    private final Supplier<Integer> compareFlagsSupplier;
     private final Supplier<Boolean> insertModeSupplier;
     private final Consumer<String> statusSetter;
     private final Runnable refreshDiffOnlyView;
@@ -33,19 +49,35 @@ public class DiffController implements DocEventSuppressor {
     private final Highlighter.HighlightPainter insertPainter;
     private final Highlighter.HighlightPainter changeLeftPainter;
     private final Highlighter.HighlightPainter changeRightPainter;
+    private final Highlighter.HighlightPainter movePainter;
 
     private final List<Object> focusLeftTags = new ArrayList<>();
     private final List<Object> focusRightTags = new ArrayList<>();
+    /** Left lines of CHANGE pairs that already carry inline highlights (EDT only). */
+    private final java.util.BitSet inlineDone = new java.util.BitSet();
 
     private SwingWorker<DiffEngine.Result, Void> diffWorker;
+    private DiffEngine.CancelToken diffCancel = DiffEngine.CancelToken.NONE;
+    /** A diff was requested while a superseded one was still unwinding (EDT only). */
+    private boolean diffPending = false;
     private Timer debounceTimer;
+    private Timer autoSaveTimer;
     private volatile boolean suppressDocEvents = false;
+    private volatile DiffEngine.Strategy strategy = DiffEngine.Strategy.AUTO;
+    private volatile DiffEngine.Budget budget = DEFAULT_BUDGET;
+    private volatile boolean detectMoves = true;
+
+    // incremental re-diff state (EDT only)
+    private final EditWindow leftEdits = new EditWindow();
+    private final EditWindow rightEdits = new EditWindow();
+    private boolean incrementalBase = false;
+    private long editSerial = 0L;
 
     public DiffController(EditorPane left,
                           EditorPane right,
                           DiffSession session,
                           CenterDiffGutter gutter,
-                          Supplier<Boolean> ignoreWhitespaceSupplier,
+                          Supplier<Integer> compareFlagsSupplier,
                           Supplier<Boolean> insertModeSupplier,
                           Consumer<String> statusSetter,
                           Runnable refreshDiffOnlyView,
@@ -56,12 +88,13 @@ public class DiffController implements DocEventSuppressor {
                           Highlighter.HighlightPainter deletePainter,
                           Highlighter.HighlightPainter insertPainter,
                           Highlighter.HighlightPainter changeLeftPainter,
-                          Highlighter.HighlightPainter changeRightPainter) {
+                          Highlighter.HighlightPainter changeRightPainter,
+                          Highlighter.HighlightPainter movePainter) {
         this.left = left;
         this.right = right;
         this.session = session;
         this.gutter = gutter;
-        this.ignoreWhitespaceSupplier = ignoreWhitespaceSupplier;
+        this.compareFlagsSupplier = compareFlagsSupplier;
         this.insertModeSupplier = insertModeSupplier;
         this.statusSetter = statusSetter;
         this.refreshDiffOnlyView = refreshDiffOnlyView;
@@ -73,6 +106,7 @@ public class DiffController implements DocEventSuppressor {
         this.insertPainter = insertPainter;
         this.changeLeftPainter = changeLeftPainter;
         this.changeRightPainter = changeRightPainter;
+        this.movePainter = movePainter;
     }
 
     @Override
@@ -85,11 +119,63 @@ public class DiffController implements DocEventSuppressor {
         this.suppressDocEvents = suppressDocEvents;
     }
 
+    public DiffEngine.Strategy strategy() {
+        return strategy;
+    }
+
+    public void setStrategy(DiffEngine.Strategy strategy) {
+        this.strategy = strategy == null ? DiffEngine.Strategy.AUTO : strategy;
+    }
+
+    public DiffEngine.Budget budget() {
+        return budget;
+    }
+
+    public void setBudget(DiffEngine.Budget budget) {
+        this.budget = budget == null ? DiffEngine.Budget.UNLIMITED : budget;
+    }
+
+    public boolean detectMoves() {
+        return detectMoves;
+    }
+
+    /** Whether deleted blocks that reappear elsewhere are reported as MOVE rows. */
+    public void setDetectMoves(boolean detectMoves) {
+        this.detectMoves = detectMoves;
+    }
+
+    /**
+     * Feeds a text edit to the incremental path and schedules a recompute. Edits made
+     * while doc events are suppressed (merges, collapse) are not tracked, so they force
+     * the next recompute to be a full one.
+     */
+    public void documentChanged(DocumentEvent e) {
+        editSerial = editSerial + 1;
+        if (suppressDocEvents) {
+            incrementalBase = false;
+            return;
+        }
+        if (incrementalBase) {
+            EditWindow window = e.getDocument() == left.area().getDocument() ? leftEdits : rightEdits;
+            javax.swing.text.Element root = e.getDocument().getDefaultRootElement();
+            DocumentEvent.ElementChange change = e.getChange(root);
+            if (change != null) {
+                window.record(change.getIndex(), change.getChildrenRemoved().length, change.getChildrenAdded().length);
+            } else {
+                window.record(root.getElementIndex(e.getOffset()), 1, 1);
+            }
+        }
+        delayedRecompute();
+    }
+
     public void delayedRecompute() {
         if (debounceTimer != null && debounceTimer.isRunning()) {
             debounceTimer.stop();
         }
-        debounceTimer = new Timer(600, e -> startDiffInBackground());
+        int delay = incrementalBase ? INCREMENTAL_DELAY_MS : 600;
+        debounceTimer = new Timer(delay, e -> {
+            if (!tryIncrementalDiff()) startDiffInBackground();
+        });
         debounceTimer.setRepeats(false);
         debounceTimer.start();
     }
@@ -102,7 +188,7 @@ public class DiffController implements DocEventSuppressor {
         refreshHighlights();
         addInlineHighlights();
         updateNavButtons.run();
-        gutter.rebuildMarkers(session.currentDiff().hunks);
+        gutter.rebuildMarkers(session.currentDiff().table);
         refreshDiffOnlyView.run();
     }
 
@@ -112,6 +198,12 @@ public class DiffController implements DocEventSuppressor {
         int maxIndex = changes.size() - 1;
         session.setCurrentIndex(Math.max(0, Math.min(newIndex, maxIndex)));
         DiffEngine.Hunk h = changes.get(session.currentIndex());
+        if (h.type() == HunkType.MOVE) {
+            // show both ends of the move
+            boolean source = h.leftEnd() > h.leftStart();
+            DiffEngine.Hunk m = session.currentDiff().moveAt(source, source ? h.leftStart() : h.rightStart());
+            if (m != null) h = m;
+        }
         try {
             int lStart = left.area().getLineStartOffset(
                     Math.min(h.leftStart(), Math.max(0, left.area().getLineCount() - 1)));
@@ -127,69 +219,201 @@ public class DiffController implements DocEventSuppressor {
         statusSetter.accept("Diff " + (session.currentIndex() + 1) + " / " + changes.size());
     }
 
-    private void startDiffInBackground() {
-        final String leftText = left.area().getText();
-        final String rightText = right.area().getText();
-        final boolean ignoreWS = ignoreWhitespaceSupplier.get();
+    /**
+     * Re-diffs only the edited line windows on the EDT when the session still holds the
+     * diff of the pre-edit texts. Returns false when a full diff is needed instead.
+     */
+    private boolean tryIncrementalDiff() {
+        if (!incrementalBase) return false;
+        if (diffWorker != null && !diffWorker.isDone()) return false;
+        // paged documents are never copied into Strings; they are diffed from disk once saved
+        if (left.area().getDocument() instanceof PagedDocument
+                || right.area().getDocument() instanceof PagedDocument) return false;
+        // only an edited side is read again, and only its edited lines are split
+        LineIndex leftIndex = leftEdits.isEmpty() ? session.leftIndex()
+                : LineIndex.spliced(session.leftIndex(), left.area().getText(), leftEdits);
+        LineIndex rightIndex = rightEdits.isEmpty() ? session.rightIndex()
+                : LineIndex.spliced(session.rightIndex(), right.area().getText(), rightEdits);
+        DiffEngine.Budget limits = new DiffEngine.Budget(budget.maxEditDistance(), INCREMENTAL_MAX_MILLIS,
+                budget.maxMemoryBytes());
+        DiffEngine.Result diff = DiffEngine.rediffWindow(session.currentDiff(), leftIndex, rightIndex,
+                leftEdits, rightEdits, normalizer(compareFlagsSupplier.get()), strategy, limits,
+                insertModeSupplier.get(), INCREMENTAL_MAX_WINDOW);
+        leftEdits.clear();
+        rightEdits.clear();
+        if (diff == null || (diff.approximate && !session.currentDiff().approximate)) {
+            // too large or too slow for the EDT: the worker diffs it with a real cancel token
+            incrementalBase = false;
+            return false;
+        }
+        if (detectMoves) {
+            diff = MoveDetector.detect(diff, leftIndex, rightIndex);
+        }
+        applyDiff(diff, leftIndex, rightIndex, false);
+        return true;
+    }
+
+    private static java.util.function.Function<String, String> normalizer(int compareFlags) {
+        return compareFlags != 0
+                ? LineCompare.normalizer(compareFlags)
+                : java.util.function.Function.identity();
+    }
 
-        if (leftText.length() > 2000000 || rightText.length() > 2000000) {
-            statusSetter.accept("Large file mode: View → Recompute Diff");
+    /**
+     * Starts a full diff on a worker thread. At most one runs at a time: a request that
+     * arrives while one is running cancels it and is started from its done() instead.
+     */
+    private void startDiffInBackground() {
+        if (diffWorker != null && !diffWorker.isDone()) {
+            diffCancel.cancel();
+            diffPending = true;
             return;
         }
+        diffPending = false;
 
-        if (diffWorker != null && !diffWorker.isDone()) {
-            diffWorker.cancel(true);
+        final CharSequence leftText = left.chars();
+        final CharSequence rightText = right.chars();
+        final int compareFlags = compareFlagsSupplier.get();
+        final DiffEngine.Strategy algo = strategy;
+        final DiffEngine.Budget limits = budget;
+        final boolean moves = detectMoves;
+        final boolean refine = insertModeSupplier.get();
+        final long serial = editSerial;
+        incrementalBase = false;
+        leftEdits.clear();
+        rightEdits.clear();
+
+        // large texts are diffed from their files, if the editors still match them
+        final boolean stream = leftText.length() > LARGE_TEXT_CHARS || rightText.length() > LARGE_TEXT_CHARS;
+        final java.nio.file.Path leftPath = left.path();
+        final java.nio.file.Path rightPath = right.path();
+        if (stream && !(streamable(left) && streamable(right))) {
+            statusSetter.accept("Large file mode: save both sides to diff them from disk");
+            return;
         }
 
-        statusSetter.accept("Computing diff…");
+        final DiffEngine.CancelToken cancel = new DiffEngine.CancelToken();
+        diffCancel = cancel;
+        statusSetter.accept(stream ? "Computing diff from disk…" : "Computing diff…");
         diffWorker = new SwingWorker<>() {
-            @Override protected DiffEngine.Result doInBackground() {
-                java.util.function.Function<String, String> norm = ignoreWS
-                        ? s -> s.replaceAll("\\s+", "")
-                        : java.util.function.Function.identity();
-                DiffEngine.Result base = DiffEngine.diffLinesNormalized(leftText, rightText, norm);
-                if (insertModeSupplier.get()) {
-                    return DiffEngine.refineChanges(base, leftText, rightText);
+            private LineIndex leftIndex;
+            private LineIndex rightIndex;
+
+            @Override protected DiffEngine.Result doInBackground() throws java.io.IOException {
+                // a paged document's snapshot knows its newlines, so these do not scan it
+                leftIndex = LineIndex.of(leftText);
+                rightIndex = LineIndex.of(rightText);
+                if (stream) {
+                    return StreamingDiff.diff(leftPath, rightPath, StreamingDiff.DEFAULT_WINDOW_LINES, limits, cancel);
                 }
-                return base;
+                // toggling an option off and on again finds the earlier diff here
+                DiffSession.ResultKey key = session.resultKey(leftText, rightText, compareFlags, refine,
+                        algo, limits, moves);
+                DiffEngine.Result cached = session.cachedResult(key, leftIndex, rightIndex);
+                if (cached != null) return cached;
+                DiffEngine.Pipeline run = new DiffEngine.Pipeline(leftIndex, rightIndex, normalizer(compareFlags),
+                        algo, limits, cancel, session.lineCache());
+                DiffEngine.Result base = run.result(refine);
+                DiffEngine.Result result = moves ? MoveDetector.detect(base, leftIndex, rightIndex) : base;
+                session.cacheResult(key, result);
+                return result;
             }
             @Override protected void done() {
-                if (isCancelled()) return;
+                if (diffPending) {
+                    // superseded: drop this result and run the diff that was asked for meanwhile
+                    startDiffInBackground();
+                    return;
+                }
+                if (cancel.isCancelled()) return;
                 try {
-                    DiffEngine.Result diff = get();
-                    session.updateTexts(leftText, rightText);
-                    session.updateDiff(diff);
-                    if (DebugLog.isEnabled()) {
-                        logHunksWithText(diff, session.leftLines(), session.rightLines());
+                    applyDiff(get(), leftIndex, rightIndex, true);
+                    if (stream) {
+                        String off = offWhenStreaming(compareFlags, refine, moves);
+                        if (off != null) statusSetter.accept("Large file mode: diffed from disk without " + off);
                     }
-                    List<DiffEngine.Hunk> changes = session.changes();
-                    if (changes.isEmpty()) {
-                        session.setCurrentIndex(-1);
-                    } else {
-                        int idx = session.currentIndex();
-                        if (idx < 0 || idx >= changes.size()) {
-                            session.setCurrentIndex(0);
-                        }
+                    // later edits can be applied incrementally only if none slipped in meanwhile
+                    incrementalBase = editSerial == serial;
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    if (ex.getCause() instanceof java.io.IOException) {
+                        statusSetter.accept("Diff failed: " + ex.getCause().getMessage());
                     }
-                    refreshHighlights();
-                    addInlineHighlights();
-                    if (session.currentIndex() >= 0) {
-                        gotoDiff(session.currentIndex());
-                    } else {
-                        updateNavButtons.run();
-                        statusSetter.accept("No differences.");
-                    }
-                    gutter.rebuildMarkers(session.currentDiff().hunks);
-                    refreshDiffOnlyView.run();
-                    autoSave.run();
                 } catch (Exception ignored) {}
             }
         };
         diffWorker.execute();
     }
 
+    /**
+     * The options that are set but that {@link StreamingDiff} does not apply, as a phrase
+     * for the status bar, or null when none are.
+     */
+    static String offWhenStreaming(int compareFlags, boolean refine, boolean moves) {
+        List<String> off = new ArrayList<>();
+        if (compareFlags != 0) off.add("comparison options");
+        if (refine) off.add("insert mode");
+        if (moves) off.add("move detection");
+        if (off.isEmpty()) return null;
+        if (off.size() == 1) return off.get(0);
+        return String.join(", ", off.subList(0, off.size() - 1)) + " and " + off.get(off.size() - 1);
+    }
+
+    /**
+     * True when the pane's text is what its plain-text file held when loaded or saved, so
+     * {@link StreamingDiff} can read the file instead. Comparison flags, insert mode and
+     * move detection do not apply on that path; the status bar says so after the diff.
+     */
+    private static boolean streamable(EditorPane pane) {
+        java.nio.file.Path path = pane.path();
+        return path != null && !FileContentLoader.isExcel(path) && !pane.isModified();
+    }
+
+    /**
+     * Shows diff. Full diffs auto-save right away; incremental ones, which follow
+     * keystrokes, once typing pauses for {@link #AUTOSAVE_IDLE_MS}.
+     */
+    private void applyDiff(DiffEngine.Result diff, LineIndex leftIndex, LineIndex rightIndex, boolean saveNow) {
+        session.updateTexts(leftIndex, rightIndex);
+        session.updateDiff(diff);
+        if (DebugLog.isEnabled()) {
+            logHunksWithText(diff, session.leftLines(), session.rightLines());
+        }
+        List<DiffEngine.Hunk> changes = session.changes();
+        if (changes.isEmpty()) {
+            session.setCurrentIndex(-1);
+        } else {
+            int idx = session.currentIndex();
+            if (idx < 0 || idx >= changes.size()) {
+                session.setCurrentIndex(0);
+            }
+        }
+        refreshHighlights();
+        addInlineHighlights();
+        if (session.currentIndex() >= 0) {
+            gotoDiff(session.currentIndex());
+            if (diff.approximate) {
+                statusSetter.accept("Diff " + (session.currentIndex() + 1) + " / " + changes.size()
+                        + " (approximate: diff budget exceeded)");
+            }
+        } else {
+            updateNavButtons.run();
+            statusSetter.accept("No differences.");
+        }
+        gutter.rebuildMarkers(session.currentDiff().table);
+        refreshDiffOnlyView.run();
+        if (autoSaveTimer != null) {
+            autoSaveTimer.stop();
+        }
+        if (saveNow) {
+            autoSave.run();
+        } else {
+            autoSaveTimer = new Timer(AUTOSAVE_IDLE_MS, e -> autoSave.run());
+            autoSaveTimer.setRepeats(false);
+            autoSaveTimer.start();
+        }
+    }
+
     private void logHunksWithText(DiffEngine.Result diff, List<String> leftLines, List<String> rightLines) {
-        DebugLog.log("Hunks (mode: %s, ignoreWS=%s)", insertModeSupplier.get() ? "INSERT" : "REWRITE", ignoreWhitespaceSupplier.get());
+        DebugLog.log("Hunks (mode: %s, compareFlags=%d)", insertModeSupplier.get() ? "INSERT" : "REWRITE", compareFlagsSupplier.get());
         int max = Math.min(diff.hunks.size(), 50);
         for (int i = 0; i < max; i++) {
             DiffEngine.Hunk h = diff.hunks.get(i);
@@ -219,43 +443,85 @@ public class DiffController implements DocEventSuppressor {
         clearFocusHighlights();
         left.clearHighlights();
         right.clearHighlights();
+        inlineDone.clear();
 
-        int i = 0;
-        int n = session.currentDiff().hunks.size();
-        while (i < n) {
-            DiffEngine.Hunk h = session.currentDiff().hunks.get(i);
-            if (h.type() == HunkType.DELETE) {
-                left.highlightLines(deletePainter, h.leftStart(), h.leftEnd());
-            } else if (h.type() == HunkType.INSERT) {
-                right.highlightLines(insertPainter, h.rightStart(), h.rightEnd());
-            } else if (h.type() == HunkType.CHANGE) {
-                left.highlightLines(changeLeftPainter, h.leftStart(), h.leftEnd());
-                right.highlightLines(changeRightPainter, h.rightStart(), h.rightEnd());
+        HunkTable table = session.currentDiff().table;
+        int k = 0;
+        int n = table.changeCount();
+        while (k < n) {
+            int row = table.changeRow(k);
+            HunkType type = table.type(row);
+            if (type == HunkType.DELETE) {
+                left.highlightLines(deletePainter, table.leftStart(row), table.leftEnd(row));
+            } else if (type == HunkType.INSERT) {
+                right.highlightLines(insertPainter, table.rightStart(row), table.rightEnd(row));
+            } else if (type == HunkType.CHANGE) {
+                left.highlightLines(changeLeftPainter, table.leftStart(row), table.leftEnd(row));
+                right.highlightLines(changeRightPainter, table.rightStart(row), table.rightEnd(row));
+            } else if (type == HunkType.MOVE) {
+                // a MOVE row has lines on one side only
+                left.highlightLines(movePainter, table.leftStart(row), table.leftEnd(row));
+                right.highlightLines(movePainter, table.rightStart(row), table.rightEnd(row));
             }
-            i = i + 1;
+            k = k + 1;
         }
     }
 
+    /** Adds inline highlights for CHANGE line pairs that came into view since the last full refresh. */
+    public void viewportChanged() {
+        addInlineHighlights();
+    }
+
+    /** Inline highlights for the paired CHANGE lines in or near either viewport. */
     private void addInlineHighlights() {
-        int i = 0;
-        int n = session.currentDiff().hunks.size();
-        while (i < n) {
-            DiffEngine.Hunk h = session.currentDiff().hunks.get(i);
-            if (h.type() == HunkType.CHANGE) {
-                int pairCount = Math.min(h.leftEnd() - h.leftStart(), h.rightEnd() - h.rightStart());
-                int j = 0;
-                while (j < pairCount) {
-                    String l = session.safeLine(true, h.leftStart() + j);
-                    String r = session.safeLine(false, h.rightStart() + j);
-                    DiffSession.InlineSpan span = session.computeInlineSpan(l, r);
-                    if (span != null) {
-                        highlightWord(left.area(), h.leftStart() + j, span.start(), span.endLeft(), inlinePainter);
-                        highlightWord(right.area(), h.rightStart() + j, span.start(), span.endRight(), inlinePainter);
+        addVisibleInline(true, left.area());
+        addVisibleInline(false, right.area());
+    }
+
+    private void addVisibleInline(boolean leftSide, JTextArea area) {
+        javax.swing.text.Element root = area.getDocument().getDefaultRootElement();
+        if (root.getElementCount() <= 0) return;
+        Rectangle vr = area.getVisibleRect();
+        int first = root.getElementIndex(area.viewToModel2D(new Point(0, vr.y)));
+        int last = root.getElementIndex(area.viewToModel2D(new Point(0, vr.y + vr.height)));
+        first = Math.max(0, first - INLINE_MARGIN_LINES);
+        last = last + INLINE_MARGIN_LINES;
+
+        DiffEngine.Result diff = session.currentDiff();
+        HunkTable table = diff.table;
+        int row = table.firstRowEndingAfter(leftSide, first);
+        if (row < 0) return;
+        while (row < table.size() && table.start(leftSide, row) <= last) {
+            if (table.type(row) == HunkType.CHANGE) {
+                int line = Math.max(first, table.start(leftSide, row));
+                int end = Math.min(last + 1, table.end(leftSide, row));
+                while (line < end) {
+                    int other = diff.pairs.partner(leftSide, line);
+                    int leftLine = leftSide ? line : other;
+                    if (other >= 0 && !inlineDone.get(leftLine)) {
+                        inlineDone.set(leftLine);
+                        addInlinePair(leftLine, leftSide ? other : line);
                     }
-                    j = j + 1;
+                    line = line + 1;
                 }
             }
-            i = i + 1;
+            row = row + 1;
+        }
+    }
+
+    private void addInlinePair(int leftLine, int rightLine) {
+        InlineDiff.Spans spans = session.inlineSpans(session.safeLine(true, leftLine), session.safeLine(false, rightLine));
+        int[] ls = spans.left();
+        int k = 0;
+        while (k < ls.length) {
+            highlightWord(left.area(), leftLine, ls[k], ls[k + 1], inlinePainter);
+            k = k + 2;
+        }
+        int[] rs = spans.right();
+        k = 0;
+        while (k < rs.length) {
+            highlightWord(right.area(), rightLine, rs[k], rs[k + 1], inlinePainter);
+            k = k + 2;
         }
     }
 
@@ -278,13 +544,15 @@ public class DiffController implements DocEventSuppressor {
             javax.swing.text.Element rootR = right.area().getDocument().getDefaultRootElement();
             clearFocusHighlights();
 
-            if (h.type() == HunkType.DELETE || h.type() == HunkType.CHANGE) {
+            if (h.type() == HunkType.DELETE || h.type() == HunkType.CHANGE
+                    || (h.type() == HunkType.MOVE && h.leftEnd() > h.leftStart())) {
                 addFocusLines(left.highlighter(), focusLeftTags, rootL, left.area(), h.leftStart(), h.leftEnd());
                 left.gutter().setFocusLines(java.util.List.of(clampLine(h.leftStart(), rootL)));
             } else {
                 left.gutter().setFocusLines(java.util.List.of());
             }
-            if (h.type() == HunkType.INSERT || h.type() == HunkType.CHANGE) {
+            if (h.type() == HunkType.INSERT || h.type() == HunkType.CHANGE
+                    || (h.type() == HunkType.MOVE && h.rightEnd() > h.rightStart())) {
                 addFocusLines(right.highlighter(), focusRightTags, rootR, right.area(), h.rightStart(), h.rightEnd());
                 right.gutter().setFocusLines(java.util.List.of(clampLine(h.rightStart(), rootR)));
             } else {
@@ -2,20 +2,49 @@ package app;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * DiffEngine
  * ----------
  * Fast line-based diff using Myers O(ND) algorithm with line hashing.
- * Produces "hunks" (EQUAL / DELETE / INSERT / CHANGE) over line ranges.
+ * Produces "hunks" (EQUAL / DELETE / INSERT / CHANGE) over line ranges; {@link MoveDetector}
+ * can then mark deleted blocks that reappear elsewhere as MOVE.
+ * Large inputs switch to the linear-space (middle snake) variant of Myers.
  * No use of ++ or -- operators (per user request).
  */
 public class DiffEngine {
 
-    public enum HunkType { EQUAL, INSERT, DELETE, CHANGE }
+    /**
+     * MOVE rows come from {@link MoveDetector}: each has a range on one side only, and
+     * {@link Result#moves} links the source (left) range with the destination (right).
+     */
+    public enum HunkType { EQUAL, INSERT, DELETE, CHANGE, MOVE }
+
+    /**
+     * Diff algorithm selection.
+     * AUTO uses the classic Myers trace for small inputs and the linear-space variant
+     * once N+M reaches {@link #LINEAR_SPACE_THRESHOLD}.
+     * HISTOGRAM anchors on low-occurrence lines (git's histogram diff).
+     * PATIENCE anchors on lines unique to both sides and runs Myers between them.
+     */
+    public enum Strategy { AUTO, MYERS, LINEAR_MYERS, HISTOGRAM, PATIENCE }
+
+    /** N+M (in lines) from which AUTO stops keeping the O(D·(N+M)) Myers trace. */
+    public static final int LINEAR_SPACE_THRESHOLD = 10000;
+
+    /** N+M (in lines) from which AUTO cuts the input at unique anchors and diffs the pieces in parallel. */
+    public static final int PARALLEL_THRESHOLD = 50000;
+
+    /** Smallest piece (N+M lines) worth handing to another worker. */
+    private static final int PARALLEL_MIN_PIECE = 4096;
+    /** Unchanged lines kept on each side of an edit when re-diffing a window. */
+    private static final int INCREMENTAL_CONTEXT = 3;
+
+    /** Histogram diff falls back to Myers when every common line occurs more often than this. */
+    private static final int HISTOGRAM_MAX_CHAIN = 64;
 
     public static record Hunk(HunkType type, int leftStart, int leftEnd, int rightStart, int rightEnd) {
         @Override public String toString() {
@@ -25,18 +54,207 @@ public class DiffEngine {
     }
 
     public static class Result {
+        /** Row view of {@link #table}; Hunk records are created on access. */
         public final List<Hunk> hunks;
-        public Result(List<Hunk> hunks) { this.hunks = hunks; }
+        public final HunkTable table;
+        /** True when a {@link Budget} ran out and the hunks come from the heuristic fallback. */
+        public final boolean approximate;
+        /** Counterpart of each line inside CHANGE hunks; positional unless the texts were known. */
+        public final LinePairs pairs;
+        /** One MOVE hunk per moved block: left range where it was, right range where it went. */
+        public final List<Hunk> moves;
+        public Result(List<Hunk> hunks) { this(hunks, false); }
+        public Result(List<Hunk> hunks, boolean approximate) { this(HunkTable.of(hunks), approximate); }
+        public Result(HunkTable table, boolean approximate) { this(table, approximate, LinePairs.positional(table)); }
+        public Result(HunkTable table, boolean approximate, LinePairs pairs) { this(table, approximate, pairs, List.of()); }
+        public Result(HunkTable table, boolean approximate, LinePairs pairs, List<Hunk> moves) {
+            this.table = table;
+            this.hunks = table.asList();
+            this.approximate = approximate;
+            this.pairs = pairs;
+            this.moves = moves;
+        }
         public List<Hunk> changeHunks() {
-            List<Hunk> out = new ArrayList<>();
+            return table.changes();
+        }
+        /** The move whose source (left) or destination (right) range holds line, or null. */
+        public Hunk moveAt(boolean leftSide, int line) {
+            for (Hunk m : moves) {
+                int start = leftSide ? m.leftStart() : m.rightStart();
+                int end = leftSide ? m.leftEnd() : m.rightEnd();
+                if (line >= start && line < end) return m;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Limits for one diff run; 0 means unlimited. maxEditDistance bounds a single Myers
+     * search, maxMillis the wall-clock time and maxMemoryBytes the Myers trace. Past the
+     * D or time limit the engine gives up on a minimal script and splits at the
+     * furthest-reaching diagonal instead (GNU diff's "too expensive" heuristic); past the
+     * memory limit it switches to the linear-space search.
+     */
+    public record Budget(int maxEditDistance, long maxMillis, long maxMemoryBytes) {
+        public static final Budget UNLIMITED = new Budget(0, 0, 0);
+    }
+
+    /**
+     * Cooperative cancellation for one diff run. The engine polls it once per D step,
+     * per divide-and-conquer frame and every few thousand lines while interning, and
+     * unwinds with {@link DiffCancelledException} once it is set.
+     */
+    public static final class CancelToken {
+        /** Never cancelled; {@link #cancel()} on it is ignored. */
+        public static final CancelToken NONE = new CancelToken();
+
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            if (this != NONE) cancelled = true;
+        }
+
+        public boolean isCancelled() { return cancelled; }
+
+        void check() {
+            if (cancelled) throw new DiffCancelledException();
+        }
+    }
+
+    /** Thrown out of the engine when the run's {@link CancelToken} was cancelled. */
+    public static final class DiffCancelledException extends RuntimeException {
+        public DiffCancelledException() {
+            super("Diff cancelled");
+        }
+    }
+
+    /** Lines interned or normalized between two cancellation polls (a power of two). */
+    private static final int CANCEL_POLL_LINES = 4096;
+
+    /** Lines from which a range of a String is hashed and interned on the common ForkJoinPool. */
+    static final int PARALLEL_INTERN_LINES = 1 << 16;
+    /** Smallest chunk of lines hashed by one worker. */
+    private static final int PARALLEL_CHUNK_LINES = 1 << 14;
+
+    /**
+     * Line ids kept across diffs of the same two documents. Each side remembers its last
+     * text and ids; on the next diff the lines inside the unchanged prefix and suffix of
+     * the text keep their ids and only the lines in between are hashed and interned.
+     * Ids stay valid because the interner lives as long as the cache; it is dropped and
+     * rebuilt once it holds more than maxIds ids or twice the live line count, so ids
+     * of deleted lines (and the old texts they point into) do not pile up.
+     */
+    public static final class LineCache {
+        /** Chars compared per regionMatches call when looking for the changed range. */
+        private static final int SCAN_CHUNK = 4096;
+
+        private final int maxIds;
+        private IntMapper mapper;
+        private int flags;
+        private final LineIndex[] indexes = new LineIndex[2];
+        private final int[][] ids = new int[2][];
+
+        public LineCache(int maxIds) {
+            this.maxIds = maxIds;
+        }
+
+        /** Forgets all ids; the next diff interns every line again. */
+        public synchronized void clear() {
+            mapper = null;
+            indexes[0] = null;
+            indexes[1] = null;
+            ids[0] = null;
+            ids[1] = null;
+        }
+
+        /** Ids of both texts under flags, from one interner; element 0 is left. */
+        synchronized int[][] map(LineIndex left, LineIndex right, int flags, CancelToken cancel) {
+            int live = left.lineCount() + right.lineCount();
+            if (mapper == null || this.flags != flags || mapper.next > maxIds || mapper.next > 2 * live + SCAN_CHUNK) {
+                clear();
+                mapper = new IntMapper(cancel, flags);
+                this.flags = flags;
+            }
+            mapper.cancel = cancel;
+            int[] a = side(0, left);
+            int[] b = side(1, right);
+            return new int[][] { a, b };
+        }
+
+        synchronized int idBound() {
+            return mapper == null ? 1 : mapper.next;
+        }
+
+        synchronized boolean hasFlags(int flags) {
+            return mapper != null && this.flags == flags;
+        }
+
+        private int[] side(int k, LineIndex now) {
+            LineIndex before = indexes[k];
+            int[] old = ids[k];
+            int[] out;
+            if (before == null) {
+                out = mapper.map(now);
+            } else {
+                CharSequence t0 = before.text();
+                CharSequence t1 = now.text();
+                int n0 = t0.length();
+                int n1 = t1.length();
+                int pre = commonPrefix(t0, t1, Math.min(n0, n1));
+                if (pre == n0 && n0 == n1) {
+                    out = old;
+                } else {
+                    int suf = commonSuffix(t0, t1, Math.min(n0, n1) - pre);
+                    int c0 = before.lineCount();
+                    int c1 = now.lineCount();
+                    // lines whose text and trailing '\n' lie in the common prefix
+                    int head = 0;
+                    while (head < c1 && head < c0 && now.end(head) < pre) {
+                        head = head + 1;
+                    }
+                    // lines whose text and leading '\n' lie in the common suffix
+                    int tail = 0;
+                    while (tail < c1 - head && tail < c0 - head && now.start(c1 - 1 - tail) > n1 - suf) {
+                        tail = tail + 1;
+                    }
+                    out = new int[c1];
+                    System.arraycopy(old, 0, out, 0, head);
+                    int[] mid = mapper.map(now, head, c1 - tail);
+                    System.arraycopy(mid, 0, out, head, mid.length);
+                    System.arraycopy(old, c0 - tail, out, c1 - tail, tail);
+                }
+            }
+            indexes[k] = now;
+            ids[k] = out;
+            return out;
+        }
+
+        private static int commonPrefix(CharSequence a, CharSequence b, int max) {
             int i = 0;
-            int n = hunks.size();
-            while (i < n) {
-                Hunk h = hunks.get(i);
-                if (h.isChangeLike()) out.add(h);
+            if (a instanceof String sa && b instanceof String sb) {
+                while (i + SCAN_CHUNK <= max && sa.regionMatches(i, sb, i, SCAN_CHUNK)) {
+                    i = i + SCAN_CHUNK;
+                }
+            }
+            while (i < max && a.charAt(i) == b.charAt(i)) {
                 i = i + 1;
             }
-            return out;
+            return i;
+        }
+
+        private static int commonSuffix(CharSequence a, CharSequence b, int max) {
+            int na = a.length();
+            int nb = b.length();
+            int i = 0;
+            if (a instanceof String sa && b instanceof String sb) {
+                while (i + SCAN_CHUNK <= max && sa.regionMatches(na - i - SCAN_CHUNK, sb, nb - i - SCAN_CHUNK, SCAN_CHUNK)) {
+                    i = i + SCAN_CHUNK;
+                }
+            }
+            while (i < max && a.charAt(na - 1 - i) == b.charAt(nb - 1 - i)) {
+                i = i + 1;
+            }
+            return i;
         }
     }
 
@@ -47,119 +265,781 @@ public class DiffEngine {
 
     /** Faster line-based diff using Myers O(ND) with line hashing. */
     public static Result diffLinesFast(String left, String right) {
-        return diffLinesNormalized(left, right, s -> s);
+        return diffLines(LineIndex.of(left), LineIndex.of(right));
+    }
+
+    public static Result diffLines(LineIndex left, LineIndex right) {
+        return diffLinesNormalized(left, right, null, Strategy.AUTO, Budget.UNLIMITED);
     }
 
     public static Result diffLinesNormalized(String left, String right, java.util.function.Function<String, String> normalizer) {
-        List<String> Lorig = splitFast(left);
-        List<String> Rorig = splitFast(right);
+        return diffLinesNormalized(left, right, normalizer, Strategy.AUTO);
+    }
 
-        List<String> L = Lorig;
-        List<String> R = Rorig;
+    public static Result diffLinesNormalized(String left, String right,
+                                             java.util.function.Function<String, String> normalizer,
+                                             Strategy strategy) {
+        return diffLinesNormalized(left, right, normalizer, strategy, Budget.UNLIMITED);
+    }
+
+    public static Result diffLinesNormalized(String left, String right,
+                                             java.util.function.Function<String, String> normalizer,
+                                             Strategy strategy,
+                                             Budget budget) {
+        return diffLinesNormalized(LineIndex.of(left), LineIndex.of(right), normalizer, strategy, budget);
+    }
+
+    public static Result diffLinesNormalized(LineIndex left, LineIndex right,
+                                             java.util.function.Function<String, String> normalizer,
+                                             Strategy strategy,
+                                             Budget budget) {
+        return diffLinesNormalized(left, right, normalizer, strategy, budget, CancelToken.NONE);
+    }
+
+    public static Result diffLinesNormalized(LineIndex left, LineIndex right,
+                                             java.util.function.Function<String, String> normalizer,
+                                             Strategy strategy,
+                                             Budget budget,
+                                             CancelToken cancel) {
+        return diffLinesNormalized(left, right, normalizer, strategy, budget, cancel, null);
+    }
+
+    /**
+     * Diffs two pre-split texts; lines are only materialized when a normalizer must see them.
+     * Throws {@link DiffCancelledException} if cancel is set while the diff runs. With a
+     * cache, lines unchanged since its last diff reuse their ids (not with custom
+     * normalizers or when blank lines are ignored). See {@link Pipeline} for the stages.
+     */
+    public static Result diffLinesNormalized(LineIndex left, LineIndex right,
+                                             java.util.function.Function<String, String> normalizer,
+                                             Strategy strategy,
+                                             Budget budget,
+                                             CancelToken cancel,
+                                             LineCache cache) {
+        return new Pipeline(left, right, normalizer, strategy, budget, cancel, cache).result(false);
+    }
+
+    /**
+     * One diff run as explicit stages, each computed on first use and kept for callers:
+     * tokenize (the two {@link LineIndex}es it was built from), intern
+     * ({@link #leftIds()}, {@link #rightIds()}), diff ({@link #diffTable()}), refine
+     * ({@link #refinedTable()}) and coalesce ({@link #result(boolean)}: blank lines put
+     * back, line pairs built). Refinement runs on the ids the diff used, so it follows
+     * the same comparison flags and needs no second split or interning pass. When blank
+     * lines are ignored, ids and tables cover the non-blank lines listed by
+     * {@link #leftKept()} and {@link #rightKept()}; the result covers all lines.
+     * Not thread-safe.
+     */
+    public static final class Pipeline {
+        private final LineIndex left;
+        private final LineIndex right;
+        private final java.util.function.Function<String, String> normalizer;
+        private final Strategy strategy;
+        private final Budget budget;
+        private final CancelToken cancel;
+        private final LineCache cache;
 
-        if (normalizer != null) {
-            L = normalizeList(L, normalizer);
-            R = normalizeList(R, normalizer);
+        private int[] leftIds;
+        private int[] rightIds;
+        private int idBound;
+        private int[] leftKept;
+        private int[] rightKept;
+        private HunkTable diffTable;
+        private boolean approximate;
+        private HunkTable refinedTable;
+
+        public Pipeline(LineIndex left, LineIndex right, java.util.function.Function<String, String> normalizer,
+                        Strategy strategy, Budget budget, CancelToken cancel, LineCache cache) {
+            this.left = left;
+            this.right = right;
+            this.normalizer = normalizer;
+            this.strategy = strategy;
+            this.budget = budget == null ? Budget.UNLIMITED : budget;
+            this.cancel = cancel == null ? CancelToken.NONE : cancel;
+            this.cache = cache;
+        }
+
+        public LineIndex left() { return left; }
+        public LineIndex right() { return right; }
+
+        public int[] leftIds() { intern(); return leftIds; }
+        public int[] rightIds() { intern(); return rightIds; }
+        /** One past the largest id in {@link #leftIds()} and {@link #rightIds()}. */
+        public int idBound() { intern(); return idBound; }
+        /** Lines the ids stand for when blank lines are ignored, else null. */
+        public int[] leftKept() { intern(); return leftKept; }
+        public int[] rightKept() { intern(); return rightKept; }
+
+        /** Rows of the base diff over the ids. */
+        public HunkTable diffTable() {
+            if (diffTable == null) {
+                intern();
+                Meter meter = new Meter(budget, cancel);
+                diffTable = diffIds(leftIds, rightIds, strategy, meter).toTable();
+                approximate = meter.approximate;
+                if (approximate) {
+                    DebugLog.log("Diff budget exceeded; heuristic fallback used");
+                }
+            }
+            return diffTable;
         }
 
-        // Map lines to ints to speed equality checks
-        IntMapper mapper = new IntMapper();
-        int[] a = mapper.map(L);
-        int[] b = mapper.map(R);
+        /** The base rows with CHANGE split into DELETE/INSERT around common lines. */
+        public HunkTable refinedTable() {
+            if (refinedTable == null) {
+                HunkTable base = diffTable();
+                refinedTable = explodeChangeAsDeleteInsert(refineChangeHunks(base, leftIds, rightIds, idBound, cancel));
+                logRefined(base, refinedTable);
+            }
+            return refinedTable;
+        }
 
-        List<Op> ops = myers(a, b); // EQUAL/DELETE/INSERT runs
-        List<Hunk> hunks = coalesceToHunks(ops);
-        return new Result(hunks);
+        /** The base or refined rows over real line numbers, with their line pairs. */
+        public Result result(boolean refine) {
+            HunkTable table = refine ? refinedTable() : diffTable();
+            if (leftKept != null) {
+                // refined INSERT rows sit at the start of the DELETE before them; restoring needs them after it
+                table = restoreBlankLines(refine ? inSequence(table) : table, leftKept, left.lineCount(), rightKept, right.lineCount());
+            }
+            return new Result(table, approximate, LinePairs.of(table, left, right));
+        }
+
+        private void intern() {
+            if (leftIds != null) return;
+            // Map lines to ints to speed equality checks
+            int flags = LineCompare.flagsOf(normalizer);
+            if (cache != null && flags >= 0 && (flags & LineCompare.IGNORE_BLANK_LINES) == 0) {
+                int[][] ids = cache.map(left, right, flags, cancel);
+                leftIds = ids[0];
+                rightIds = ids[1];
+                idBound = cache.idBound();
+                return;
+            }
+            IntMapper mapper = new IntMapper(cancel, Math.max(flags, 0));
+            if (flags > 0 && (flags & LineCompare.IGNORE_BLANK_LINES) != 0) {
+                // diff the non-blank lines only and map the rows back afterwards
+                leftKept = nonBlankLines(left);
+                rightKept = nonBlankLines(right);
+                leftIds = mapper.map(left, leftKept);
+                rightIds = mapper.map(right, rightKept);
+            } else if (flags >= 0) {
+                leftIds = mapper.map(left);
+                rightIds = mapper.map(right);
+            } else {
+                leftIds = mapper.map(normalizeList(left.asList(), normalizer, cancel));
+                rightIds = mapper.map(normalizeList(right.asList(), normalizer, cancel));
+            }
+            idBound = mapper.next;
+        }
     }
+
     /**
-     * Post-process hunks to prefer insert/delete alignment inside changes.
+     * Post-process hunks to prefer insert/delete alignment inside changes. Lines are
+     * compared exactly; a {@link Pipeline} refines under the diff's own comparison flags.
      */
     public static Result refineChanges(Result base, String leftText, String rightText) {
-        List<String> Lorig = splitFast(leftText);
-        List<String> Rorig = splitFast(rightText);
-        List<Hunk> refined = refineChangeHunks(base.hunks, Lorig, Rorig);
+        return refineChanges(base, LineIndex.of(leftText), LineIndex.of(rightText));
+    }
+
+    public static Result refineChanges(Result base, LineIndex left, LineIndex right) {
+        return refineChanges(base, left, right, CancelToken.NONE);
+    }
+
+    public static Result refineChanges(Result base, LineIndex left, LineIndex right, CancelToken cancel) {
+        return refineChanges(base, left, right, cancel, null);
+    }
+
+    /** As above; the cache is used when its ids are exact-match ones (no comparison flags). */
+    public static Result refineChanges(Result base, LineIndex left, LineIndex right, CancelToken cancel,
+                                       LineCache cache) {
+        int[] a;
+        int[] b;
+        int idBound;
+        if (cache != null && cache.hasFlags(0)) {
+            int[][] ids = cache.map(left, right, 0, cancel);
+            a = ids[0];
+            b = ids[1];
+            idBound = cache.idBound();
+        } else {
+            IntMapper mapper = new IntMapper(cancel, 0);
+            a = mapper.map(left);
+            b = mapper.map(right);
+            idBound = mapper.next;
+        }
+        HunkTable refined = refineChangeHunks(base.table, a, b, idBound, cancel);
         // Fallback: if still change-like, split into pure delete/insert blocks to avoid rewrites.
         refined = explodeChangeAsDeleteInsert(refined);
+        logRefined(base.table, refined);
+        return new Result(refined, base.approximate, LinePairs.of(refined, left, right));
+    }
+
+    private static void logRefined(HunkTable base, HunkTable refined) {
         if (DebugLog.isEnabled()) {
-            DebugLog.log("RefineChanges: base=%d refined=%d", base.hunks.size(), refined.size());
+            DebugLog.log("RefineChanges: base=%d refined=%d", base.size(), refined.size());
             if (refined.size() <= 50) {
                 DebugLog.log("Refined hunks:");
-                for (Hunk h : refined) {
+                for (Hunk h : refined.asList()) {
                     DebugLog.log("  %s", h);
                 }
             }
         }
-        return new Result(refined);
     }
 
-    private static List<String> normalizeList(List<String> src, java.util.function.Function<String, String> norm) {
-        List<String> out = new ArrayList<>(src.size());
+    /**
+     * Incremental update: re-diffs only the lines around the edits and splices them into
+     * previous, which must describe the texts as they were before the edits. The window
+     * is widened to the nearest EQUAL anchors (plus {@link #INCREMENTAL_CONTEXT} lines)
+     * on both sides; everything outside it is copied, shifted past the edit. Returns
+     * null when the window is larger than maxWindowLines, so the caller can run a full
+     * diff instead; so it does when blank lines are ignored, since the rows then no
+     * longer pair lines one to one. With refine set the window also goes through
+     * {@link #refineChanges}.
+     */
+    public static Result rediffWindow(Result previous, LineIndex left, LineIndex right,
+                                      EditWindow leftEdit, EditWindow rightEdit,
+                                      java.util.function.Function<String, String> normalizer,
+                                      Strategy strategy, Budget budget, boolean refine,
+                                      int maxWindowLines) {
+        if (leftEdit.isEmpty() && rightEdit.isEmpty()) return previous;
+        int flags = LineCompare.flagsOf(normalizer);
+        if (flags > 0 && (flags & LineCompare.IGNORE_BLANK_LINES) != 0) return null;
+        HunkTable t = previous.table;
+        int n = t.size();
+        int oldLeftCount = left.lineCount() - (leftEdit.isEmpty() ? 0 : leftEdit.delta());
+        int oldRightCount = right.lineCount() - (rightEdit.isEmpty() ? 0 : rightEdit.delta());
+
+        // start anchor: last point of an EQUAL row that is at or before both edit starts
+        int cL = leftEdit.isEmpty() ? Integer.MAX_VALUE : leftEdit.start();
+        int cR = rightEdit.isEmpty() ? Integer.MAX_VALUE : rightEdit.start();
+        int headRow = 0;
+        int headLen = 0;
+        int r = 0;
+        while (r < n && t.leftStart(r) <= cL && t.rightStart(r) <= cR) {
+            if (t.type(r) == HunkType.EQUAL) {
+                int k = Math.min(t.leftEnd(r) - t.leftStart(r), Math.min(cL - t.leftStart(r), cR - t.rightStart(r)));
+                headRow = r;
+                headLen = Math.max(0, k - INCREMENTAL_CONTEXT);
+            }
+            r = r + 1;
+        }
+        int sL = headRow < n ? t.leftStart(headRow) + headLen : 0;
+        int sR = headRow < n ? t.rightStart(headRow) + headLen : 0;
+
+        // end anchor: first point of an EQUAL row that is at or after both edit ends
+        int eCL = leftEdit.isEmpty() ? 0 : leftEdit.oldEnd();
+        int eCR = rightEdit.isEmpty() ? 0 : rightEdit.oldEnd();
+        int tailRow = n;
+        int tailLen = 0;
+        int eL = oldLeftCount;
+        int eR = oldRightCount;
+        r = n - 1;
+        while (r >= headRow && t.leftEnd(r) >= eCL && t.rightEnd(r) >= eCR) {
+            if (t.type(r) == HunkType.EQUAL) {
+                int len = t.leftEnd(r) - t.leftStart(r);
+                int k = Math.min(len, Math.min(t.leftEnd(r) - eCL, t.rightEnd(r) - eCR));
+                k = Math.max(0, k - INCREMENTAL_CONTEXT);
+                if (r == headRow) {
+                    k = Math.min(k, len - headLen);
+                }
+                tailRow = r;
+                tailLen = k;
+                eL = t.leftEnd(r) - k;
+                eR = t.rightEnd(r) - k;
+            }
+            r = r - 1;
+        }
+
+        int dL = left.lineCount() - oldLeftCount;
+        int dR = right.lineCount() - oldRightCount;
+        int wl = eL + dL - sL;
+        int wr = eR + dR - sR;
+        if (wl < 0 || wr < 0 || wl + wr > maxWindowLines) return null;
+
+        IntMapper mapper = new IntMapper(CancelToken.NONE, Math.max(flags, 0));
+        int[] a;
+        int[] b;
+        if (flags >= 0) {
+            a = mapper.map(left, sL, sL + wl);
+            b = mapper.map(right, sR, sR + wr);
+        } else {
+            a = mapper.map(normalizeList(left.asList().subList(sL, sL + wl), normalizer, CancelToken.NONE));
+            b = mapper.map(normalizeList(right.asList().subList(sR, sR + wr), normalizer, CancelToken.NONE));
+        }
+        Meter meter = new Meter(budget == null ? Budget.UNLIMITED : budget, CancelToken.NONE);
+        HunkTable window = diffIds(a, b, strategy, meter).toTable();
+        if (refine) {
+            window = explodeChangeAsDeleteInsert(refineChangeHunks(window, a, b, mapper.next, CancelToken.NONE));
+        }
+
+        HunkTable.Builder out = new HunkTable.Builder(n + window.size());
+        r = 0;
+        while (r < headRow && headRow < n) {
+            out.add(t.type(r), t.leftStart(r), t.leftEnd(r), t.rightStart(r), t.rightEnd(r));
+            r = r + 1;
+        }
+        if (headRow < n) {
+            out.add(HunkType.EQUAL, t.leftStart(headRow), sL, t.rightStart(headRow), sR);
+        }
+        r = 0;
+        while (r < window.size()) {
+            out.add(window.type(r), window.leftStart(r) + sL, window.leftEnd(r) + sL,
+                    window.rightStart(r) + sR, window.rightEnd(r) + sR);
+            r = r + 1;
+        }
+        if (tailRow < n) {
+            out.add(HunkType.EQUAL, eL + dL, eL + tailLen + dL, eR + dR, eR + tailLen + dR);
+            r = tailRow + 1;
+            while (r < n) {
+                out.add(t.type(r), t.leftStart(r) + dL, t.leftEnd(r) + dL, t.rightStart(r) + dR, t.rightEnd(r) + dR);
+                r = r + 1;
+            }
+        }
+        HunkTable spliced = out.build();
+        return new Result(spliced, previous.approximate || meter.approximate, LinePairs.of(spliced, left, right));
+    }
+
+    /** Indices of the lines holding more than whitespace. */
+    private static int[] nonBlankLines(LineIndex lines) {
+        int n = lines.lineCount();
+        CharSequence text = lines.text();
+        int[] kept = new int[n];
+        int count = 0;
         int i = 0;
-        int n = src.size();
         while (i < n) {
-            out.add(norm.apply(src.get(i)));
+            if (!LineCompare.isBlank(text, lines.start(i), lines.end(i))) {
+                kept[count] = i;
+                count = count + 1;
+            }
             i = i + 1;
         }
-        return out;
+        return count == n ? kept : Arrays.copyOf(kept, count);
     }
 
-    /* ===================== Helpers ===================== */
+    /** The rows laid end to end on both sides, keeping their types and lengths. */
+    private static HunkTable inSequence(HunkTable t) {
+        HunkTable.Builder out = new HunkTable.Builder(t.size());
+        int l = 0;
+        int r = 0;
+        int i = 0;
+        while (i < t.size()) {
+            int nl = l + (t.leftEnd(i) - t.leftStart(i));
+            int nr = r + (t.rightEnd(i) - t.rightStart(i));
+            out.add(t.type(i), l, nl, r, nr);
+            l = nl;
+            r = nr;
+            i = i + 1;
+        }
+        return out.build();
+    }
 
-    private static List<String> splitFast(String s) {
-        List<String> out = new ArrayList<>();
-        int start = 0;
-        int n = s.length();
+    /**
+     * Maps rows over the non-blank lines back to real line numbers. Blank lines inside a
+     * change stay with it; the others join the EQUAL row after them (the leading ones
+     * form their own), so each side may hold a different number of blank lines there.
+     */
+    private static HunkTable restoreBlankLines(HunkTable t, int[] leftKept, int leftCount,
+                                               int[] rightKept, int rightCount) {
+        int nl = leftKept.length;
+        int nr = rightKept.length;
+        HunkTable.Builder out = new HunkTable.Builder(t.size() + 1);
+        int curL = nl == 0 ? leftCount : leftKept[0];
+        int curR = nr == 0 ? rightCount : rightKept[0];
+        out.add(HunkType.EQUAL, 0, curL, 0, curR);
+        int r = 0;
+        while (r < t.size()) {
+            int le = t.leftEnd(r);
+            int re = t.rightEnd(r);
+            // start of the next non-blank line (or the end) on each side
+            int nextL = le < nl ? leftKept[le] : leftCount;
+            int nextR = re < nr ? rightKept[re] : rightCount;
+            if (t.type(r) == HunkType.EQUAL) {
+                out.add(HunkType.EQUAL, curL, nextL, curR, nextR);
+            } else {
+                int endL = le > t.leftStart(r) ? leftKept[le - 1] + 1 : curL;
+                int endR = re > t.rightStart(r) ? rightKept[re - 1] + 1 : curR;
+                out.add(t.type(r), curL, endL, curR, endR);
+                out.add(HunkType.EQUAL, endL, nextL, endR, nextR);
+            }
+            curL = nextL;
+            curR = nextR;
+            r = r + 1;
+        }
+        return out.build();
+    }
+
+    private static List<String> normalizeList(List<String> src, java.util.function.Function<String, String> norm,
+                                              CancelToken cancel) {
+        List<String> out = new ArrayList<>(src.size());
         int i = 0;
+        int n = src.size();
         while (i < n) {
-            if (s.charAt(i) == '\n') {
-                out.add(s.substring(start, i));
-                start = i + 1;
-            }
+            if ((i & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
+            out.add(norm.apply(src.get(i)));
             i = i + 1;
         }
-        out.add(s.substring(start)); // keep trailing "line" (possibly empty)
         return out;
     }
 
+    /* ===================== Helpers ===================== */
+
+    /**
+     * Assigns 1-based ids to distinct lines with a primitive open-addressing table keyed
+     * by the 64-bit line hash. Each id remembers the char range of its first occurrence,
+     * and a hash hit is only accepted after comparing the text, so a 64-bit collision
+     * just probes on. Strings and LineIndex lines hash the same way and share ids.
+     * Non-zero {@link LineCompare} flags are applied while hashing and comparing.
+     * Long ranges of a String are hashed in parallel (see {@link #mapParallel}).
+     */
     private static class IntMapper {
-        private final HashMap<String, Integer> map = new HashMap<>();
+        private static final int MIN_CAPACITY = 64;
+
+        private long[] slotHash = new long[MIN_CAPACITY];
+        private int[] slotId = new int[MIN_CAPACITY];   // 0 = empty
         private int next = 1;
 
+        // per id: hash and the range holding its text
+        private long[] idHash = new long[MIN_CAPACITY];
+        private CharSequence[] idText = new CharSequence[MIN_CAPACITY];
+        private int[] idStart = new int[MIN_CAPACITY];
+        private int[] idEnd = new int[MIN_CAPACITY];
+
+        private CancelToken cancel;
+        private final int flags;
+
+        IntMapper(CancelToken cancel, int flags) {
+            this.cancel = cancel;
+            this.flags = flags;
+        }
+
         int id(String key) {
-            Integer cur = map.get(key);
-            if (cur != null) return cur;
-            int ret = next;
-            map.put(key, ret);
-            next = next + 1;
-            return ret;
+            return id(key, 0, key.length(), LineCompare.hash64(key, 0, key.length(), flags));
         }
 
         int[] map(List<String> lines) {
-            int[] arr = new int[lines.size()];
-            int i = 0;
             int n = lines.size();
+            reserve(n);
+            int[] arr = new int[n];
+            int i = 0;
             while (i < n) {
+                if ((i & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
                 arr[i] = id(lines.get(i));
                 i = i + 1;
             }
             return arr;
         }
+
+        int[] map(LineIndex lines) {
+            return map(lines, 0, lines.lineCount());
+        }
+
+        /** Ids of the given lines, in order. */
+        int[] map(LineIndex lines, int[] which) {
+            int n = which.length;
+            reserve(n);
+            CharSequence text = lines.text();
+            int[] arr = new int[n];
+            int i = 0;
+            while (i < n) {
+                if ((i & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
+                int line = which[i];
+                int start = lines.start(line);
+                int end = lines.end(line);
+                arr[i] = id(text, start, end, LineCompare.hash64(text, start, end, flags));
+                i = i + 1;
+            }
+            return arr;
+        }
+
+        /** Ids of lines [from, to); element 0 is line from. */
+        int[] map(LineIndex lines, int from, int to) {
+            int n = to - from;
+            if (n >= PARALLEL_INTERN_LINES && lines.text() instanceof String
+                    && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                return mapParallel(lines, from, to);
+            }
+            reserve(n);
+            CharSequence text = lines.text();
+            int[] arr = new int[n];
+            int i = 0;
+            while (i < n) {
+                if ((i & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
+                int line = from + i;
+                int start = lines.start(line);
+                int end = lines.end(line);
+                long h = flags == 0 ? lines.hash64(line) : LineCompare.hash64(text, start, end, flags);
+                arr[i] = id(text, start, end, h);
+                i = i + 1;
+            }
+            return arr;
+        }
+
+        /**
+         * As {@link #map(LineIndex, int, int)}, with the lines cut into chunks that are
+         * hashed and deduplicated within themselves on the common pool. Only the distinct
+         * lines of each chunk then go through this (single-threaded) table, chunk after
+         * chunk, so the ids come out exactly as a sequential pass assigns them; a last
+         * parallel pass turns the chunk-local numbers into those ids.
+         */
+        private int[] mapParallel(LineIndex lines, int from, int to) {
+            int n = to - from;
+            int chunks = Math.max(2, Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), n / PARALLEL_CHUNK_LINES));
+            long[] hashes = new long[n];
+            int[] local = new int[n];
+            int[] bounds = new int[chunks + 1];
+            int c = 0;
+            while (c <= chunks) {
+                bounds[c] = (int) ((long) n * c / chunks);
+                c = c + 1;
+            }
+            CancelToken token = cancel;
+            int f = flags;
+            List<ForkJoinTask<int[]>> tasks = new ArrayList<>(chunks);
+            c = 0;
+            while (c < chunks) {
+                int lo = bounds[c];
+                int hi = bounds[c + 1];
+                tasks.add(ForkJoinPool.commonPool().submit(() -> dedupChunk(lines, from, lo, hi, hashes, local, f, token)));
+                c = c + 1;
+            }
+            int[][] firsts = new int[chunks][];
+            int distinct = 0;
+            c = 0;
+            while (c < chunks) {
+                firsts[c] = tasks.get(c).join();
+                distinct = distinct + firsts[c].length;
+                c = c + 1;
+            }
+
+            reserve(distinct);
+            CharSequence text = lines.text();
+            int[][] ids = new int[chunks][];
+            c = 0;
+            while (c < chunks) {
+                int[] first = firsts[c];
+                int[] out = new int[first.length];
+                int j = 0;
+                while (j < first.length) {
+                    if ((j & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
+                    int i = first[j];
+                    out[j] = id(text, lines.start(from + i), lines.end(from + i), hashes[i]);
+                    j = j + 1;
+                }
+                ids[c] = out;
+                c = c + 1;
+            }
+
+            int[] arr = new int[n];
+            List<ForkJoinTask<?>> remap = new ArrayList<>(chunks);
+            c = 0;
+            while (c < chunks) {
+                int lo = bounds[c];
+                int hi = bounds[c + 1];
+                int[] chunkIds = ids[c];
+                remap.add(ForkJoinPool.commonPool().submit(() -> {
+                    int i = lo;
+                    while (i < hi) {
+                        arr[i] = chunkIds[local[i]];
+                        i = i + 1;
+                    }
+                }));
+                c = c + 1;
+            }
+            c = 0;
+            while (c < chunks) {
+                remap.get(c).join();
+                c = c + 1;
+            }
+            return arr;
+        }
+
+        /**
+         * Hashes lines from + [lo, hi) into hashes and numbers them by distinct text
+         * within the chunk into local; returns the index of the first line with each number.
+         */
+        private static int[] dedupChunk(LineIndex lines, int from, int lo, int hi, long[] hashes, int[] local,
+                                        int flags, CancelToken cancel) {
+            CharSequence text = lines.text();
+            int cap = Integer.highestOneBit(Math.max(16, 2 * (hi - lo) - 1)) << 1;
+            long[] slotHash = new long[cap];
+            int[] slotNum = new int[cap];   // number + 1; 0 = empty
+            int mask = cap - 1;
+            int[] firsts = new int[Math.max(16, (hi - lo) / 8)];
+            int distinct = 0;
+            int i = lo;
+            while (i < hi) {
+                if (((i - lo) & (CANCEL_POLL_LINES - 1)) == 0) cancel.check();
+                int start = lines.start(from + i);
+                int end = lines.end(from + i);
+                long h = LineCompare.hash64(text, start, end, flags);
+                hashes[i] = h;
+                int slot = (int) h & mask;
+                int num = -1;
+                while (slotNum[slot] != 0) {
+                    int cand = slotNum[slot] - 1;
+                    int first = from + firsts[cand];
+                    if (slotHash[slot] == h
+                            && LineCompare.equal(text, lines.start(first), lines.end(first), text, start, end, flags)) {
+                        num = cand;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (num < 0) {
+                    num = distinct;
+                    if (distinct == firsts.length) {
+                        firsts = Arrays.copyOf(firsts, distinct * 2);
+                    }
+                    firsts[distinct] = i;
+                    distinct = distinct + 1;
+                    slotHash[slot] = h;
+                    slotNum[slot] = num + 1;
+                }
+                local[i] = num;
+                i = i + 1;
+            }
+            return Arrays.copyOf(firsts, distinct);
+        }
+
+        private int id(CharSequence s, int from, int to, long h) {
+            int mask = slotId.length - 1;
+            int slot = (int) h & mask;
+            int cur = slotId[slot];
+            while (cur != 0) {
+                if (slotHash[slot] == h && sameText(cur, s, from, to)) {
+                    return cur;
+                }
+                slot = (slot + 1) & mask;
+                cur = slotId[slot];
+            }
+            int ret = next;
+            next = next + 1;
+            if (ret >= idHash.length) {
+                int len = idHash.length * 2;
+                idHash = Arrays.copyOf(idHash, len);
+                idText = Arrays.copyOf(idText, len);
+                idStart = Arrays.copyOf(idStart, len);
+                idEnd = Arrays.copyOf(idEnd, len);
+            }
+            idHash[ret] = h;
+            idText[ret] = s;
+            idStart[ret] = from;
+            idEnd[ret] = to;
+            slotHash[slot] = h;
+            slotId[slot] = ret;
+            if (ret * 2 > slotId.length) {
+                rehash(slotId.length * 2);
+            }
+            return ret;
+        }
+
+        private boolean sameText(int id, CharSequence s, int from, int to) {
+            return LineCompare.equal(idText[id], idStart[id], idEnd[id], s, from, to, flags);
+        }
+
+        /** Sizes the table for about this many more distinct lines up front. */
+        private void reserve(int lines) {
+            int want = (next + lines) * 2;
+            if (want > slotId.length) {
+                int cap = slotId.length;
+                while (cap < want) {
+                    cap = cap * 2;
+                }
+                rehash(cap);
+            }
+        }
+
+        private void rehash(int cap) {
+            long[] hashes = new long[cap];
+            int[] ids = new int[cap];
+            int mask = cap - 1;
+            int id = 1;
+            while (id < next) {
+                int slot = (int) idHash[id] & mask;
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = idHash[id];
+                ids[slot] = id;
+                id = id + 1;
+            }
+            slotHash = hashes;
+            slotId = ids;
+        }
     }
 
-    /* -------------------- Myers core (with backtrack) -------------------- */
+    /* -------------------- Strategy dispatch -------------------- */
+
+    private static EditRuns diffIds(int[] a, int[] b, Strategy strategy, Meter meter) {
+        Strategy s = strategy == null ? Strategy.AUTO : strategy;
+        if (s == Strategy.AUTO) {
+            if (a.length + b.length >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                return parallelDiff(a, b, meter);
+            }
+            s = resolveAuto(a.length + b.length);
+        }
+        if (s == Strategy.LINEAR_MYERS) {
+            return linearMyers(a, b, meter);
+        }
+        if (s == Strategy.HISTOGRAM || s == Strategy.PATIENCE) {
+            return anchoredDiff(a, b, s, meter);
+        }
+        return myers(a, b, meter);
+    }
 
-    /** op.type: 0=EQUAL, 1=DELETE, 2=INSERT */
-    private static class Op {
-        final int type;
-        final int aStart, aEnd, bStart, bEnd;
-        Op(int type, int aStart, int aEnd, int bStart, int bEnd) {
-            this.type = type; this.aStart = aStart; this.aEnd = aEnd; this.bStart = bStart; this.bEnd = bEnd;
+    /**
+     * Diffs two arrays of line ids (equal ids for equal lines) under the budget, for
+     * callers that intern lines themselves such as {@link StreamingDiff}.
+     */
+    static Result diffIds(int[] a, int[] b, Strategy strategy, Budget budget, CancelToken cancel) {
+        Meter meter = new Meter(budget == null ? Budget.UNLIMITED : budget, cancel);
+        return new Result(diffIds(a, b, strategy, meter).toTable(), meter.approximate);
+    }
+
+    private static Strategy resolveAuto(int size) {
+        return size >= LINEAR_SPACE_THRESHOLD ? Strategy.LINEAR_MYERS : Strategy.MYERS;
+    }
+
+    /* -------------------- Budget tracking -------------------- */
+
+    /** Per-run view of a {@link Budget}; shared by parallel pieces. */
+    private static final class Meter {
+        /** Per-search D limit once the wall clock has run out, so the rest finishes quickly. */
+        static final int EXPIRED_SNAKE_LIMIT = 64;
+
+        final int maxD;
+        final long deadline;
+        final long maxMemory;
+        final CancelToken cancel;
+        volatile boolean approximate;
+
+        Meter(Budget budget, CancelToken cancel) {
+            this.cancel = cancel;
+            this.maxD = budget.maxEditDistance() > 0 ? budget.maxEditDistance() : Integer.MAX_VALUE;
+            this.deadline = budget.maxMillis() > 0 ? System.nanoTime() + budget.maxMillis() * 1000000L : 0L;
+            this.maxMemory = budget.maxMemoryBytes() > 0 ? budget.maxMemoryBytes() : Long.MAX_VALUE;
+        }
+
+        /** Throws {@link DiffCancelledException} once the run has been cancelled. */
+        void checkCancelled() {
+            cancel.check();
+        }
+
+        boolean timeUp() {
+            return deadline != 0L && System.nanoTime() - deadline > 0L;
+        }
+
+        /** D beyond which one middle-snake search stops looking for the optimum. */
+        int searchLimit() {
+            return timeUp() ? Math.min(maxD, EXPIRED_SNAKE_LIMIT) : maxD;
         }
     }
 
-    private static List<Op> myers(int[] a, int[] b) {
+    /* -------------------- Myers core (with backtrack) -------------------- */
+
+    private static EditRuns myers(int[] a, int[] b, Meter meter) {
         int N = a.length;
         int M = b.length;
+        if (N == 0 && M == 0) return new EditRuns();
         int MAX = N + M;
         int size = 2 * MAX + 1;
 
@@ -168,6 +1048,11 @@ public class DiffEngine {
 
         int D = 0;
         while (D <= MAX) {
+            meter.checkCancelled();
+            // the trace grows by one V per step; hand over to the linear-space search when over budget
+            if (D > meter.maxD || (long) (D + 1) * size * 4L > meter.maxMemory || meter.timeUp()) {
+                return linearMyers(a, b, meter);
+            }
             int[] cur = Arrays.copyOf(V, V.length);
 
             int k = -D;
@@ -214,277 +1099,875 @@ public class DiffEngine {
             V = cur;
             D = D + 1;
         }
-        return List.of();
+        return new EditRuns();
     }
 
-    private static List<Op> backtrack(int[] a, int[] b, List<int[]> trace, int D, int MAX) {
-        LinkedList<Op> ops = new LinkedList<>();
+    /**
+     * Walks the trace back once to record where each step's snake ends, then replays the
+     * steps forwards straight into the run buffer.
+     */
+    private static EditRuns backtrack(int[] a, int[] b, List<int[]> trace, int D, int MAX) {
+        int[] ends = new int[2 * (D + 1)];
         int x = a.length;
         int y = b.length;
 
         int d = D;
         while (d > 0) {
+            ends[2 * d] = x;
+            ends[2 * d + 1] = y;
             int[] V = trace.get(d - 1);
             int k = x - y;
             int idxK = k + MAX;
 
-            int prevK;
             boolean goDown;
             if (k == -d) {
                 goDown = true;
+            } else if (k != d) {
+                goDown = V[idxK - 1] < V[idxK + 1];
             } else {
-                if (k != d) {
-                    int leftVal = V[idxK - 1];
-                    int rightVal = V[idxK + 1];
-                    goDown = leftVal < rightVal;
-                } else {
-                    goDown = false;
-                }
+                goDown = false;
             }
-            if (goDown) {
-                prevK = k + 1; // insertion
+            int prevK = goDown ? k + 1 : k - 1; // insertion : deletion
+
+            x = V[prevK + MAX];
+            y = x - prevK;
+            d = d - 1;
+        }
+        // step 0 is the leading snake on diagonal 0
+        ends[0] = x;
+        ends[1] = y;
+
+        EditRuns runs = new EditRuns();
+        runs.add(0, 0, x, 0, y);
+        d = 1;
+        while (d <= D) {
+            int px = ends[2 * d - 2];
+            int py = ends[2 * d - 1];
+            int ex = ends[2 * d];
+            int ey = ends[2 * d + 1];
+            if (ex - ey > px - py) {
+                runs.add(1, px, px + 1, py, py);
+                px = px + 1;
             } else {
-                prevK = k - 1; // deletion
+                runs.add(2, px, px, py, py + 1);
+                py = py + 1;
+            }
+            runs.add(0, px, ex, py, ey);
+            d = d + 1;
+        }
+        return runs;
+    }
+
+    /* -------------------- Linear-space Myers (middle snake) -------------------- */
+
+    /**
+     * Divide-and-conquer Myers: find the middle snake with a forward and a reverse
+     * search, split there and continue on both halves. Only two V arrays are kept, so
+     * memory is O(N+M) instead of the O(D·(N+M)) trace used by {@link #myers}.
+     */
+    private static EditRuns linearMyers(int[] a, int[] b, Meter meter) {
+        EditRuns runs = new EditRuns();
+        linearMyersRange(a, 0, a.length, b, 0, b.length, runs, meter);
+        return runs;
+    }
+
+    /**
+     * Linear-space Myers over a[aLo,aHi) × b[bLo,bHi), appending to runs. Halves are
+     * processed with an explicit stack (same frame layout as {@link #anchoredDiff}).
+     */
+    private static void linearMyersRange(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                         EditRuns runs, Meter meter) {
+        int maxD = (aHi - aLo + bHi - bLo + 1) / 2 + 1;
+        int[] vf = new int[2 * maxD + 3];
+        int[] vb = new int[2 * maxD + 3];
+        int[] split = new int[2];
+
+        int[] stack = new int[5 * 64];
+        int sp = 0;
+        stack = pushFrame(stack, sp, 0, aLo, aHi, bLo, bHi);
+        sp = sp + 5;
+
+        while (sp > 0) {
+            meter.checkCancelled();
+            sp = sp - 5;
+            int kind = stack[sp];
+            int lo = stack[sp + 1];
+            int hi = stack[sp + 2];
+            int blo = stack[sp + 3];
+            int bhi = stack[sp + 4];
+            if (kind == 1) {
+                runs.add(0, lo, hi, blo, bhi);
+                continue;
             }
 
-            int xPrev = V[prevK + MAX];
-            int yPrev = xPrev - prevK;
+            int pre = 0;
+            while (lo + pre < hi && blo + pre < bhi && a[lo + pre] == b[blo + pre]) {
+                pre = pre + 1;
+            }
+            runs.add(0, lo, lo + pre, blo, blo + pre);
+            lo = lo + pre;
+            blo = blo + pre;
 
-            // snake (equals)
-            while (x > xPrev && y > yPrev) {
-                ops.addFirst(new Op(0, x - 1, x, y - 1, y));
-                x = x - 1;
-                y = y - 1;
+            int end = hi;
+            int bend = bhi;
+            while (end > lo && bend > blo && a[end - 1] == b[bend - 1]) {
+                end = end - 1;
+                bend = bend - 1;
+            }
+            if (end < hi) {
+                stack = pushFrame(stack, sp, 1, end, hi, bend, bhi);
+                sp = sp + 5;
             }
 
-            // the edit step
-            if (xPrev < x) {
-                ops.addFirst(new Op(1, xPrev, x, yPrev, yPrev)); // delete
-                x = xPrev;
-                y = yPrev;
-            } else if (yPrev < y) {
-                ops.addFirst(new Op(2, xPrev, xPrev, yPrev, y)); // insert
-                x = xPrev;
-                y = yPrev;
+            if (lo == end) {
+                runs.add(2, lo, lo, blo, bend);
+            } else if (blo == bend) {
+                runs.add(1, lo, end, blo, blo);
+            } else if (middleSnake(a, lo, end, b, blo, bend, vf, vb, split, meter)) {
+                // both sides non-empty with distinct ends → D >= 2, so both halves are strictly smaller
+                int x = split[0];
+                int y = split[1];
+                stack = pushFrame(stack, sp, 0, lo + x, end, blo + y, bend);
+                sp = sp + 5;
+                stack = pushFrame(stack, sp, 0, lo, lo + x, blo, blo + y);
+                sp = sp + 5;
+            } else {
+                runs.add(1, lo, end, blo, blo);
+                runs.add(2, end, end, blo, bend);
             }
+        }
+    }
 
-            d = d - 1;
+    /**
+     * Writes into split[0..1] the (x, y) point, relative to (aLo, bLo), where the forward
+     * path of an optimal edit script meets the reverse one. Diagonals that leave the
+     * N×M box are dropped from the search. When the search exceeds the meter's limit the
+     * furthest-reaching point found so far is used instead and the meter is marked
+     * approximate. Returns false if no usable split exists.
+     */
+    private static boolean middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                       int[] vf, int[] vb, int[] split, Meter meter) {
+        int N = aHi - aLo;
+        int M = bHi - bLo;
+        int delta = N - M;
+        boolean odd = (delta & 1) != 0;
+        int maxD = (N + M + 1) / 2;
+        int off = maxD + 1;
+        int limit = meter.searchLimit();
+        // only reset the diagonals this search can reach; a capped search must stay O(limit²)
+        int span = Math.min(maxD, limit) + 1;
+        Arrays.fill(vf, off - span, off + span + 1, -1);
+        Arrays.fill(vb, off - span, off + span + 1, -1);
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+
+        // diagonals trimmed from either end of the k range after running off the box
+        int fStart = 0;
+        int fEnd = 0;
+        int bStart = 0;
+        int bEnd = 0;
+
+        int d = 0;
+        while (d <= maxD) {
+            meter.checkCancelled();
+            if (d > limit || (d > Meter.EXPIRED_SNAKE_LIMIT && meter.timeUp())) {
+                meter.approximate = true;
+                return furthestPoint(N, M, d - 1, fStart, fEnd, bStart, bEnd, off, vf, vb, split);
+            }
+
+            // forward search
+            int k = -d + fStart;
+            while (k <= d - fEnd) {
+                int idx = off + k;
+                int x;
+                if (k == -d || (k != d && vf[idx - 1] < vf[idx + 1])) {
+                    x = vf[idx + 1];
+                } else {
+                    x = vf[idx - 1] + 1;
+                }
+                int y = x - k;
+                while (x < N && y < M && a[aLo + x] == b[bLo + y]) {
+                    x = x + 1;
+                    y = y + 1;
+                }
+                vf[idx] = x;
+                if (x > N) {
+                    fEnd = fEnd + 2;
+                } else if (y > M) {
+                    fStart = fStart + 2;
+                } else if (odd) {
+                    int kr = off + delta - k;
+                    if (Math.abs(delta - k) < d && vb[kr] != -1 && vb[kr] <= N && x >= N - vb[kr]) {
+                        split[0] = x;
+                        split[1] = y;
+                        return true;
+                    }
+                }
+                k = k + 2;
+            }
+
+            // reverse search (x, y measured from the ends)
+            k = -d + bStart;
+            while (k <= d - bEnd) {
+                int idx = off + k;
+                int x;
+                if (k == -d || (k != d && vb[idx - 1] < vb[idx + 1])) {
+                    x = vb[idx + 1];
+                } else {
+                    x = vb[idx - 1] + 1;
+                }
+                int y = x - k;
+                while (x < N && y < M && a[aHi - x - 1] == b[bHi - y - 1]) {
+                    x = x + 1;
+                    y = y + 1;
+                }
+                vb[idx] = x;
+                if (x > N) {
+                    bEnd = bEnd + 2;
+                } else if (y > M) {
+                    bStart = bStart + 2;
+                } else if (!odd) {
+                    int kf = off + delta - k;
+                    if (Math.abs(delta - k) <= d && vf[kf] != -1) {
+                        int fx = vf[kf];
+                        int fy = fx - (kf - off);
+                        if (fx <= N && fy >= 0 && fy <= M && fx >= N - x) {
+                            split[0] = fx;
+                            split[1] = fy;
+                            return true;
+                        }
+                    }
+                }
+                k = k + 2;
+            }
+            d = d + 1;
         }
+        return false;
+    }
 
-        // leading equals (if any)
-        while (x > 0 && y > 0) {
-            ops.addFirst(new Op(0, x - 1, x, y - 1, y));
-            x = x - 1;
-            y = y - 1;
+    /**
+     * GNU diff's "too expensive" fallback: among the diagonals explored up to step d, take
+     * the forward or reverse point that got furthest (largest x + y) and split there.
+     */
+    private static boolean furthestPoint(int N, int M, int d, int fStart, int fEnd, int bStart, int bEnd,
+                                         int off, int[] vf, int[] vb, int[] split) {
+        int bestF = -1;
+        int fx = 0;
+        int fy = 0;
+        int k = -d + fStart;
+        while (k <= d - fEnd) {
+            int x = vf[off + k];
+            int y = x - k;
+            if (x >= 0 && x <= N && y >= 0 && y <= M && x + y > bestF) {
+                bestF = x + y;
+                fx = x;
+                fy = y;
+            }
+            k = k + 2;
         }
-        while (x > 0) {
-            ops.addFirst(new Op(1, x - 1, x, 0, 0));
-            x = x - 1;
+        int bestB = -1;
+        int bx = 0;
+        int by = 0;
+        k = -d + bStart;
+        while (k <= d - bEnd) {
+            int x = vb[off + k];
+            int y = x - k;
+            if (x >= 0 && x <= N && y >= 0 && y <= M && x + y > bestB) {
+                bestB = x + y;
+                bx = N - x;
+                by = M - y;
+            }
+            k = k + 2;
         }
-        while (y > 0) {
-            ops.addFirst(new Op(2, 0, 0, y - 1, y));
-            y = y - 1;
+        if (bestF >= bestB) {
+            split[0] = fx;
+            split[1] = fy;
+        } else {
+            split[0] = bx;
+            split[1] = by;
         }
+        int at = split[0] + split[1];
+        return at > 0 && at < N + M;
+    }
 
-        // Merge consecutive same-type ops into runs
-        List<Op> runs = new ArrayList<>();
-        int i = 0;
-        int n = ops.size();
-        while (i < n) {
-            Op op = ops.get(i);
-            if (!runs.isEmpty()) {
-                Op last = runs.get(runs.size() - 1);
-                if (last.type == op.type) {
-                    int newAStart = Math.min(last.aStart, op.aStart);
-                    int newAEnd   = Math.max(last.aEnd,   op.aEnd);
-                    int newBStart = Math.min(last.bStart, op.bStart);
-                    int newBEnd   = Math.max(last.bEnd,   op.bEnd);
-                    runs.set(runs.size() - 1, new Op(last.type, newAStart, newAEnd, newBStart, newBEnd));
-                } else {
-                    runs.add(op);
+    /* -------------------- Parallel split -------------------- */
+
+    /**
+     * Trims the common prefix and suffix, cuts the middle at unique matching lines
+     * (the patience anchors) into independent pieces and diffs those on the common
+     * ForkJoinPool. The pieces are stitched back in order into one run list.
+     */
+    private static EditRuns parallelDiff(int[] a, int[] b, Meter meter) {
+        int pre = 0;
+        while (pre < a.length && pre < b.length && a[pre] == b[pre]) {
+            pre = pre + 1;
+        }
+        int suf = 0;
+        while (a.length - suf > pre && b.length - suf > pre && a[a.length - suf - 1] == b[b.length - suf - 1]) {
+            suf = suf + 1;
+        }
+        int aEnd = a.length - suf;
+        int bEnd = b.length - suf;
+
+        int[] cuts = parallelCuts(a, pre, aEnd, b, pre, bEnd);
+        int pieces = cuts.length / 2 - 1;
+        List<ForkJoinTask<EditRuns>> tasks = new ArrayList<>(pieces);
+        int p = 0;
+        while (p < pieces) {
+            int[] sa = Arrays.copyOfRange(a, cuts[2 * p], cuts[2 * p + 2]);
+            int[] sb = Arrays.copyOfRange(b, cuts[2 * p + 1], cuts[2 * p + 3]);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> diffIds(sa, sb, resolveAuto(sa.length + sb.length), meter)));
+            p = p + 1;
+        }
+
+        EditRuns runs = new EditRuns();
+        runs.add(0, 0, pre, 0, pre);
+        p = 0;
+        while (p < pieces) {
+            runs.addAll(tasks.get(p).join(), cuts[2 * p], cuts[2 * p + 1]);
+            p = p + 1;
+        }
+        runs.add(0, aEnd, a.length, bEnd, b.length);
+        return runs;
+    }
+
+    /**
+     * Cut points as (a, b) pairs, starting at (aLo, bLo) and ending at (aHi, bHi).
+     * Every inner cut sits on a unique line matched on both sides, so the pieces
+     * between consecutive cuts can be diffed independently.
+     */
+    private static int[] parallelCuts(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+        int[] cuts = new int[16];
+        int n = 0;
+        cuts[n] = aLo;
+        cuts[n + 1] = bLo;
+        n = n + 2;
+
+        if (aLo < aHi && bLo < bHi) {
+            int maxId = 0;
+            int i = aLo;
+            while (i < aHi) { maxId = Math.max(maxId, a[i]); i = i + 1; }
+            i = bLo;
+            while (i < bHi) { maxId = Math.max(maxId, b[i]); i = i + 1; }
+            AnchorIndex index = new AnchorIndex(maxId, a.length);
+            int found = patienceAnchors(a, aLo, aHi, b, bLo, bHi, index);
+
+            int workers = ForkJoinPool.getCommonPoolParallelism();
+            int target = Math.max(PARALLEL_MIN_PIECE, ((aHi - aLo) + (bHi - bLo)) / (workers * 4));
+            int lastA = aLo;
+            int lastB = bLo;
+            int k = 0;
+            while (k < found) {
+                int as = index.anchors[4 * k];
+                int bs = index.anchors[4 * k + 2];
+                if ((as - lastA) + (bs - lastB) >= target) {
+                    if (n + 2 > cuts.length) cuts = Arrays.copyOf(cuts, cuts.length * 2);
+                    cuts[n] = as;
+                    cuts[n + 1] = bs;
+                    n = n + 2;
+                    lastA = as;
+                    lastB = bs;
                 }
-            } else {
-                runs.add(op);
+                k = k + 1;
             }
-            i = i + 1;
         }
-        return runs;
+
+        if (n + 2 > cuts.length) cuts = Arrays.copyOf(cuts, cuts.length + 2);
+        cuts[n] = aHi;
+        cuts[n + 1] = bHi;
+        n = n + 2;
+        return Arrays.copyOf(cuts, n);
     }
 
-    /* -------------------- Convert ops → hunks -------------------- */
+    /* -------------------- Anchored strategies (histogram / patience) -------------------- */
+
+    /** Scratch tables shared by the anchored strategies, indexed by line id or by position in A. */
+    private static final class AnchorIndex {
+        final int[] head;
+        final int[] count;
+        final int[] next;
+        int[] countB;
+        int[] posB;
+        int[] lisTails;
+        int[] lisPrev;
+        /** Anchor runs found for the current region as (aStart, aEnd, bStart, bEnd) quads. */
+        int[] anchors = new int[16];
+        int anchorCount;
+
+        AnchorIndex(int maxId, int aLength) {
+            head = new int[maxId + 1];
+            count = new int[maxId + 1];
+            next = new int[aLength];
+            Arrays.fill(head, -1);
+        }
 
-    private static List<Hunk> coalesceToHunks(List<Op> ops) {
-        List<Hunk> hunks = new ArrayList<>();
+        void addAnchor(int aStart, int aEnd, int bStart, int bEnd) {
+            int at = anchorCount * 4;
+            if (at + 4 > anchors.length) {
+                anchors = Arrays.copyOf(anchors, anchors.length * 2);
+            }
+            anchors[at] = aStart;
+            anchors[at + 1] = aEnd;
+            anchors[at + 2] = bStart;
+            anchors[at + 3] = bEnd;
+            anchorCount = anchorCount + 1;
+        }
+    }
+
+    /**
+     * Shared driver: trim each region, let the strategy pick anchor runs, emit them as
+     * EQUAL and continue on the gaps between them. Regions with nothing to anchor on
+     * fall back to linear-space Myers. Regions are processed with an explicit stack so
+     * skewed inputs cannot overflow the call stack.
+     */
+    private static EditRuns anchoredDiff(int[] a, int[] b, Strategy strategy, Meter meter) {
+        int maxId = 0;
         int i = 0;
-        int n = ops.size();
-        while (i < n) {
-            Op op = ops.get(i);
-            HunkType t;
-            if (op.type == 0) t = HunkType.EQUAL;
-            else if (op.type == 1) t = HunkType.DELETE;
-            else if (op.type == 2) t = HunkType.INSERT;
-            else t = HunkType.CHANGE;
-
-            Hunk h;
-            if (t == HunkType.EQUAL) {
-                h = new Hunk(HunkType.EQUAL, op.aStart, op.aEnd, op.bStart, op.bEnd);
-            } else if (t == HunkType.DELETE) {
-                h = new Hunk(HunkType.DELETE, op.aStart, op.aEnd, op.bStart, op.bStart);
-            } else if (t == HunkType.INSERT) {
-                h = new Hunk(HunkType.INSERT, op.aStart, op.aStart, op.bStart, op.bEnd);
+        while (i < a.length) { maxId = Math.max(maxId, a[i]); i = i + 1; }
+        i = 0;
+        while (i < b.length) { maxId = Math.max(maxId, b[i]); i = i + 1; }
+        AnchorIndex index = new AnchorIndex(maxId, a.length);
+
+        EditRuns runs = new EditRuns();
+        // frames of (kind, aLo, aHi, bLo, bHi); kind 0 = region to diff, 1 = EQUAL run to emit
+        int[] stack = new int[5 * 64];
+        int sp = 0;
+        stack = pushFrame(stack, sp, 0, 0, a.length, 0, b.length);
+        sp = sp + 5;
+
+        while (sp > 0) {
+            meter.checkCancelled();
+            sp = sp - 5;
+            int kind = stack[sp];
+            int aLo = stack[sp + 1];
+            int aHi = stack[sp + 2];
+            int bLo = stack[sp + 3];
+            int bHi = stack[sp + 4];
+            if (kind == 1) {
+                runs.add(0, aLo, aHi, bLo, bHi);
+                continue;
+            }
+
+            // trim common prefix/suffix before indexing
+            int pre = 0;
+            while (aLo + pre < aHi && bLo + pre < bHi && a[aLo + pre] == b[bLo + pre]) {
+                pre = pre + 1;
+            }
+            runs.add(0, aLo, aLo + pre, bLo, bLo + pre);
+            aLo = aLo + pre;
+            bLo = bLo + pre;
+            int aEnd = aHi;
+            int bEnd = bHi;
+            while (aEnd > aLo && bEnd > bLo && a[aEnd - 1] == b[bEnd - 1]) {
+                aEnd = aEnd - 1;
+                bEnd = bEnd - 1;
+            }
+            if (aEnd < aHi) {
+                // suffix is emitted once everything in front of it is done
+                stack = pushFrame(stack, sp, 1, aEnd, aHi, bEnd, bHi);
+                sp = sp + 5;
+            }
+
+            if (aLo == aEnd) {
+                runs.add(2, aLo, aLo, bLo, bEnd);
+                continue;
+            }
+            if (bLo == bEnd) {
+                runs.add(1, aLo, aEnd, bLo, bLo);
+                continue;
+            }
+
+            index.anchorCount = 0;
+            int found;
+            if (strategy == Strategy.PATIENCE) {
+                found = patienceAnchors(a, aLo, aEnd, b, bLo, bEnd, index);
+            } else {
+                found = histogramLcs(a, aLo, aEnd, b, bLo, bEnd, index);
+            }
+            if (found < 0) {
+                linearMyersRange(a, aLo, aEnd, b, bLo, bEnd, runs, meter);
+            } else if (found == 0) {
+                runs.add(1, aLo, aEnd, bLo, bLo);
+                runs.add(2, aEnd, aEnd, bLo, bEnd);
             } else {
-                h = new Hunk(HunkType.CHANGE, op.aStart, op.aEnd, op.bStart, op.bEnd);
+                // push in reverse so frames pop as: gap, anchor, gap, anchor, ..., gap
+                int[] an = index.anchors;
+                int j = index.anchorCount - 1;
+                int gapAEnd = aEnd;
+                int gapBEnd = bEnd;
+                while (j >= 0) {
+                    int at = j * 4;
+                    stack = pushFrame(stack, sp, 0, an[at + 1], gapAEnd, an[at + 3], gapBEnd);
+                    sp = sp + 5;
+                    stack = pushFrame(stack, sp, 1, an[at], an[at + 1], an[at + 2], an[at + 3]);
+                    sp = sp + 5;
+                    gapAEnd = an[at];
+                    gapBEnd = an[at + 2];
+                    j = j - 1;
+                }
+                stack = pushFrame(stack, sp, 0, aLo, gapAEnd, bLo, gapBEnd);
+                sp = sp + 5;
             }
+        }
+        return runs;
+    }
 
-            if (!hunks.isEmpty()) {
-                Hunk last = hunks.get(hunks.size() - 1);
-                boolean bothChangeLike = (last.type != HunkType.EQUAL) && (h.type != HunkType.EQUAL);
-                boolean touching = (last.leftEnd == h.leftStart) && (last.rightEnd == h.rightStart);
-                if (bothChangeLike && touching) {
-                    Hunk merged = new Hunk(
-                            HunkType.CHANGE,
-                            last.leftStart, h.leftEnd,
-                            last.rightStart, h.rightEnd
-                    );
-                    hunks.set(hunks.size() - 1, merged);
-                    i = i + 1;
-                    continue;
+    private static int[] pushFrame(int[] stack, int sp, int kind, int aLo, int aHi, int bLo, int bHi) {
+        if (sp + 5 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp] = kind;
+        stack[sp + 1] = aLo;
+        stack[sp + 2] = aHi;
+        stack[sp + 3] = bLo;
+        stack[sp + 4] = bHi;
+        return stack;
+    }
+
+    /* -------------------- Histogram diff -------------------- */
+
+    /**
+     * Histogram diff (as in git/JGit): index the lines of A in the region and pick the
+     * longest common run that contains the lowest-occurrence line as the single anchor.
+     * Returns 1 when found, 0 when the region has no line in common, -1 when the only
+     * common lines exceed {@link #HISTOGRAM_MAX_CHAIN} occurrences.
+     */
+    private static int histogramLcs(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, AnchorIndex index) {
+        int[] head = index.head;
+        int[] count = index.count;
+        int[] next = index.next;
+
+        // index A: chains in ascending position order
+        int i = aHi - 1;
+        while (i >= aLo) {
+            int id = a[i];
+            next[i] = head[id];
+            head[id] = i;
+            count[id] = count[id] + 1;
+            i = i - 1;
+        }
+
+        int bestLen = 0;
+        int bestCnt = HISTOGRAM_MAX_CHAIN + 1;
+        int bestAs = 0;
+        int bestAe = 0;
+        int bestBs = 0;
+        int bestBe = 0;
+        boolean hasCommon = false;
+        int bPtr = bLo;
+        while (bPtr < bHi) {
+            int bNext = bPtr + 1;
+            int id = b[bPtr];
+            int p = head[id];
+            if (p >= 0 && count[id] > bestCnt) {
+                if (bestLen == 0) hasCommon = true;
+                p = -1;
+            }
+            while (p >= 0) {
+                int as = p;
+                int bs = bPtr;
+                int ae = as + 1;
+                int be = bs + 1;
+                int rc = count[id];
+                while (as > aLo && bs > bLo && a[as - 1] == b[bs - 1]) {
+                    as = as - 1;
+                    bs = bs - 1;
+                    if (rc > 1) rc = Math.min(rc, count[a[as]]);
+                }
+                while (ae < aHi && be < bHi && a[ae] == b[be]) {
+                    if (rc > 1) rc = Math.min(rc, count[a[ae]]);
+                    ae = ae + 1;
+                    be = be + 1;
+                }
+                if (bNext < be) bNext = be;
+                if (bestLen < ae - as || rc < bestCnt) {
+                    bestLen = ae - as;
+                    bestCnt = rc;
+                    bestAs = as;
+                    bestAe = ae;
+                    bestBs = bs;
+                    bestBe = be;
+                }
+                // occurrences inside the run just measured cannot start a longer one
+                p = next[p];
+                while (p >= 0 && p < ae) {
+                    p = next[p];
                 }
             }
+            bPtr = bNext;
+        }
 
-            hunks.add(h);
+        // reset the index for the next region
+        i = aLo;
+        while (i < aHi) {
+            head[a[i]] = -1;
+            count[a[i]] = 0;
             i = i + 1;
         }
-        return hunks;
+
+        if (bestLen > 0) {
+            index.addAnchor(bestAs, bestAe, bestBs, bestBe);
+            return 1;
+        }
+        return hasCommon ? -1 : 0;
+    }
+
+    /* -------------------- Patience diff -------------------- */
+
+    /**
+     * Patience diff anchors: lines that occur exactly once in both A and B within the
+     * region, reduced to the longest increasing subsequence of their B positions.
+     * Returns the number of anchors, or -1 when there are no unique common lines.
+     */
+    private static int patienceAnchors(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, AnchorIndex index) {
+        int[] countA = index.count;
+        int[] posA = index.head;
+        if (index.countB == null) {
+            index.countB = new int[countA.length];
+            index.posB = new int[countA.length];
+            index.lisTails = new int[index.next.length + 1];
+            index.lisPrev = new int[index.next.length + 1];
+        }
+        int[] countB = index.countB;
+        int[] posB = index.posB;
+
+        int i = aLo;
+        while (i < aHi) {
+            int id = a[i];
+            countA[id] = countA[id] + 1;
+            posA[id] = i;
+            i = i + 1;
+        }
+        int j = bLo;
+        while (j < bHi) {
+            int id = b[j];
+            countB[id] = countB[id] + 1;
+            posB[id] = j;
+            j = j + 1;
+        }
+
+        // candidates in A order; index.next holds their B positions, tails/prev run patience sorting
+        int[] candA = index.next;
+        int[] tails = index.lisTails;
+        int[] prev = index.lisPrev;
+        int k = 0;
+        int piles = 0;
+        i = aLo;
+        while (i < aHi) {
+            int id = a[i];
+            if (countA[id] == 1 && countB[id] == 1) {
+                int bPos = posB[id];
+                // binary search for the leftmost pile whose top is >= bPos
+                int lo = 0;
+                int hi = piles;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (posB[a[candA[tails[mid]]]] < bPos) lo = mid + 1;
+                    else hi = mid;
+                }
+                candA[k] = i;
+                prev[k] = lo > 0 ? tails[lo - 1] : -1;
+                tails[lo] = k;
+                if (lo == piles) piles = piles + 1;
+                k = k + 1;
+            }
+            i = i + 1;
+        }
+
+        if (piles > 0) {
+            // walk the LIS backwards, then store anchors in ascending order
+            int[] order = new int[piles];
+            int c = tails[piles - 1];
+            int at = piles - 1;
+            while (c >= 0) {
+                order[at] = c;
+                c = prev[c];
+                at = at - 1;
+            }
+            at = 0;
+            while (at < piles) {
+                int ai = candA[order[at]];
+                int bi = posB[a[ai]];
+                index.addAnchor(ai, ai + 1, bi, bi + 1);
+                at = at + 1;
+            }
+        }
+
+        // reset the index for the next region
+        i = aLo;
+        while (i < aHi) {
+            countA[a[i]] = 0;
+            posA[a[i]] = -1;
+            i = i + 1;
+        }
+        j = bLo;
+        while (j < bHi) {
+            countB[b[j]] = 0;
+            j = j + 1;
+        }
+        return piles > 0 ? piles : -1;
+    }
+
+    /* -------------------- Edit runs → hunks -------------------- */
+
+    /**
+     * Run-length edit script in one growable int[]: (type, aStart, aEnd, bStart, bEnd) per run,
+     * type 0=EQUAL, 1=DELETE, 2=INSERT, 3=CHANGE. Runs must be added in order. A run that
+     * touches the previous one extends it when the types match, and touching non-equal runs
+     * fold into CHANGE, so the buffer is already coalesced into hunks.
+     */
+    private static final class EditRuns {
+        private static final int STRIDE = 5;
+
+        private int[] data = new int[STRIDE * 16];
+        private int count;
+
+        int size() { return count; }
+        int type(int i) { return data[STRIDE * i]; }
+        int aStart(int i) { return data[STRIDE * i + 1]; }
+        int aEnd(int i) { return data[STRIDE * i + 2]; }
+        int bStart(int i) { return data[STRIDE * i + 3]; }
+        int bEnd(int i) { return data[STRIDE * i + 4]; }
+
+        void add(int type, int aStart, int aEnd, int bStart, int bEnd) {
+            if (aStart == aEnd && bStart == bEnd) return;
+            if (count > 0) {
+                int at = STRIDE * (count - 1);
+                int last = data[at];
+                boolean touching = data[at + 2] == aStart && data[at + 4] == bStart;
+                if (touching && (last == type || (last != 0 && type != 0))) {
+                    data[at] = last == type ? type : 3;
+                    data[at + 2] = aEnd;
+                    data[at + 4] = bEnd;
+                    return;
+                }
+            }
+            int at = STRIDE * count;
+            if (at + STRIDE > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[at] = type;
+            data[at + 1] = aStart;
+            data[at + 2] = aEnd;
+            data[at + 3] = bStart;
+            data[at + 4] = bEnd;
+            count = count + 1;
+        }
+
+        /** Appends another script shifted by (aOff, bOff). */
+        void addAll(EditRuns other, int aOff, int bOff) {
+            int i = 0;
+            while (i < other.count) {
+                add(other.type(i), other.aStart(i) + aOff, other.aEnd(i) + aOff,
+                        other.bStart(i) + bOff, other.bEnd(i) + bOff);
+                i = i + 1;
+            }
+        }
+
+        HunkTable toTable() {
+            HunkTable.Builder out = new HunkTable.Builder(count);
+            int i = 0;
+            while (i < count) {
+                int t = type(i);
+                HunkType ht = t == 0 ? HunkType.EQUAL : t == 1 ? HunkType.DELETE : t == 2 ? HunkType.INSERT : HunkType.CHANGE;
+                out.add(ht, aStart(i), aEnd(i), bStart(i), bEnd(i));
+                i = i + 1;
+            }
+            return out.build();
+        }
     }
 
     /**
      * Split CHANGE hunks into finer INSERT/DELETE/EQUAL runs using LCS within each change block.
      * This prefers insert/delete gaps over broad rewrites when lines simply go missing/appear.
+     * The LCS is the bit-parallel one over line ids, so big rewrites stay linear in memory.
      */
-    private static List<Hunk> refineChangeHunks(List<Hunk> hunks, List<String> leftLines, List<String> rightLines) {
-        List<Hunk> out = new ArrayList<>();
+    private static HunkTable refineChangeHunks(HunkTable hunks, int[] leftIds, int[] rightIds, int idBound,
+                                               CancelToken cancel) {
+        HunkTable.Builder out = new HunkTable.Builder(hunks.size());
+        BitParallelLcs lcs = null;
         int i = 0;
         int n = hunks.size();
         while (i < n) {
-            Hunk h = hunks.get(i);
-            if (h.type() != HunkType.CHANGE) {
-                out.add(h);
+            HunkType type = hunks.type(i);
+            int leftStart = hunks.leftStart(i);
+            int leftEnd = hunks.leftEnd(i);
+            int rightStart = hunks.rightStart(i);
+            int rightEnd = hunks.rightEnd(i);
+            if (type != HunkType.CHANGE) {
+                out.add(type, leftStart, leftEnd, rightStart, rightEnd);
                 i = i + 1;
                 continue;
             }
 
-            List<String> lSeg = sliceLines(leftLines, h.leftStart(), h.leftEnd());
-            List<String> rSeg = sliceLines(rightLines, h.rightStart(), h.rightEnd());
-            List<int[]> matches = lcsMatches(lSeg, rSeg);
+            if (lcs == null) {
+                lcs = new BitParallelLcs(leftIds, rightIds, idBound, cancel);
+            }
+            int lEnd = Math.min(leftEnd, leftIds.length);
+            int rEnd = Math.min(rightEnd, rightIds.length);
+            lcs.clear();
+            lcs.collect(leftStart, lEnd, rightStart, rEnd);
 
-            int lBase = h.leftStart();
-            int rBase = h.rightStart();
+            int lBase = leftStart;
+            int rBase = rightStart;
             int prevL = 0;
             int prevR = 0;
 
             int mIdx = 0;
-            int mCount = matches.size();
+            int mCount = lcs.pairCount();
             while (mIdx < mCount) {
-                int[] pair = matches.get(mIdx);
-                int ml = pair[0];
-                int mr = pair[1];
+                int ml = lcs.pairA(mIdx) - lBase;
+                int mr = lcs.pairB(mIdx) - rBase;
 
                 if (ml > prevL) {
-                    out.add(new Hunk(HunkType.DELETE, lBase + prevL, lBase + ml, rBase + prevR, rBase + prevR));
+                    out.add(HunkType.DELETE, lBase + prevL, lBase + ml, rBase + prevR, rBase + prevR);
                 }
                 if (mr > prevR) {
-                    out.add(new Hunk(HunkType.INSERT, lBase + prevL, lBase + prevL, rBase + prevR, rBase + mr));
+                    out.add(HunkType.INSERT, lBase + prevL, lBase + prevL, rBase + prevR, rBase + mr);
                 }
-                out.add(new Hunk(HunkType.EQUAL, lBase + ml, lBase + ml + 1, rBase + mr, rBase + mr + 1));
+                out.add(HunkType.EQUAL, lBase + ml, lBase + ml + 1, rBase + mr, rBase + mr + 1);
 
                 prevL = ml + 1;
                 prevR = mr + 1;
                 mIdx = mIdx + 1;
             }
 
-            if (h.leftEnd() > lBase + prevL) {
-                out.add(new Hunk(HunkType.DELETE, lBase + prevL, h.leftEnd(), rBase + prevR, rBase + prevR));
+            if (leftEnd > lBase + prevL) {
+                out.add(HunkType.DELETE, lBase + prevL, leftEnd, rBase + prevR, rBase + prevR);
             }
-            if (h.rightEnd() > rBase + prevR) {
-                out.add(new Hunk(HunkType.INSERT, lBase + prevL, lBase + prevL, rBase + prevR, h.rightEnd()));
+            if (rightEnd > rBase + prevR) {
+                out.add(HunkType.INSERT, lBase + prevL, lBase + prevL, rBase + prevR, rightEnd);
             }
 
             i = i + 1;
         }
-        return out;
-    }
-
-    private static List<String> sliceLines(List<String> src, int start, int end) {
-        List<String> out = new ArrayList<>();
-        int i = start;
-        int n = Math.min(end, src.size());
-        while (i < n) {
-            out.add(src.get(i));
-            i = i + 1;
-        }
-        return out;
+        return out.build();
     }
 
     /**
      * If any CHANGE hunks remain, explode them into DELETE+INSERT so insert-mode never rewrites.
      */
-    private static List<Hunk> explodeChangeAsDeleteInsert(List<Hunk> hunks) {
-        List<Hunk> out = new ArrayList<>();
+    private static HunkTable explodeChangeAsDeleteInsert(HunkTable hunks) {
+        HunkTable.Builder out = new HunkTable.Builder(hunks.size());
+        boolean exploded = false;
         int i = 0;
         int n = hunks.size();
         while (i < n) {
-            Hunk h = hunks.get(i);
-            if (h.type() != HunkType.CHANGE) {
-                out.add(h);
+            HunkType type = hunks.type(i);
+            int ls = hunks.leftStart(i);
+            int le = hunks.leftEnd(i);
+            int rs = hunks.rightStart(i);
+            int re = hunks.rightEnd(i);
+            if (type != HunkType.CHANGE) {
+                out.add(type, ls, le, rs, re);
                 i = i + 1;
                 continue;
             }
-            if (h.leftStart() < h.leftEnd()) {
-                out.add(new Hunk(HunkType.DELETE, h.leftStart(), h.leftEnd(), h.rightStart(), h.rightStart()));
-            }
-            if (h.rightStart() < h.rightEnd()) {
-                out.add(new Hunk(HunkType.INSERT, h.leftEnd(), h.leftEnd(), h.rightStart(), h.rightEnd()));
-            }
+            exploded = true;
+            out.add(HunkType.DELETE, ls, le, rs, rs);
+            out.add(HunkType.INSERT, le, le, rs, re);
             i = i + 1;
         }
-        return out;
-    }
-
-    private static List<int[]> lcsMatches(List<String> a, List<String> b) {
-        int n = a.size();
-        int m = b.size();
-        int[][] dp = new int[n + 1][m + 1];
-        int i = n - 1;
-        while (i >= 0) {
-            int j = m - 1;
-            while (j >= 0) {
-                if (a.get(i).equals(b.get(j))) {
-                    dp[i][j] = 1 + dp[i + 1][j + 1];
-                } else {
-                    dp[i][j] = Math.max(dp[i + 1][j], dp[i][j + 1]);
-                }
-                j = j - 1;
-            }
-            i = i - 1;
-        }
-
-        List<int[]> pairs = new ArrayList<>();
-        int ia = 0;
-        int ib = 0;
-        while (ia < n && ib < m) {
-            if (a.get(ia).equals(b.get(ib))) {
-                pairs.add(new int[]{ia, ib});
-                ia = ia + 1;
-                ib = ib + 1;
-            } else {
-                if (dp[ia + 1][ib] >= dp[ia][ib + 1]) {
-                    ia = ia + 1;
-                } else {
-                    ib = ib + 1;
-                }
-            }
-        }
-        return pairs;
+        return exploded ? out.build() : hunks;
     }
 }
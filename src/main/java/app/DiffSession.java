@@ -1,7 +1,13 @@
 package app;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import app.DiffEngine.HunkType;
 
@@ -10,13 +16,50 @@ import app.DiffEngine.HunkType;
  */
 public class DiffSession {
 
-    public record InlineSpan(int start, int endLeft, int endRight) {}
+    /** Interned line ids kept between recomputes before the cache starts over. */
+    private static final int LINE_CACHE_MAX_IDS = 1 << 21;
+
+    private final DiffEngine.LineCache lineCache = new DiffEngine.LineCache(LINE_CACHE_MAX_IDS);
+
+    /** Line pairs whose inline spans are kept; least recently used pairs are dropped first. */
+    private static final int INLINE_CACHE_SIZE = 4096;
+
+    private record InlineEntry(String left, String right, InlineDiff.Spans spans) {}
+
+    private final Map<Long, InlineEntry> inlineCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, InlineEntry> eldest) {
+            return size() > INLINE_CACHE_SIZE;
+        }
+    };
+
+    /** Full diffs kept for options flipped back and forth; least recently used dropped first. */
+    private static final int RESULT_CACHE_SIZE = 8;
+
+    /**
+     * Everything a full diff depends on: SHA-256 digests of both texts and the options
+     * it was computed with. Built with {@link #resultKey}.
+     */
+    public record ResultKey(String leftDigest, String rightDigest, int compareFlags, boolean refine,
+                            DiffEngine.Strategy strategy, DiffEngine.Budget budget, boolean detectMoves) {}
+
+    /** Cached diffs hold positional line pairs, so they keep no reference to the texts. */
+    private final Map<ResultKey, DiffEngine.Result> resultCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<ResultKey, DiffEngine.Result> eldest) {
+            return size() > RESULT_CACHE_SIZE;
+        }
+    };
+
+    /** Last digested text and its digest per side (0 = left), reused while the text is unchanged. */
+    private final String[] digestedText = new String[2];
+    private final String[] digests = new String[2];
 
     private DiffEngine.Result currentDiff = DiffEngine.diffLines("", "");
     private List<DiffEngine.Hunk> changes = currentDiff.changeHunks();
     private int currentIndex = -1;
-    private List<String> leftLines = List.of("");
-    private List<String> rightLines = List.of("");
+    private LineIndex leftIndex = LineIndex.of("");
+    private LineIndex rightIndex = LineIndex.of("");
+    private List<String> leftLines = leftIndex.asList();
+    private List<String> rightLines = rightIndex.asList();
 
     public DiffEngine.Result currentDiff() { return currentDiff; }
     public List<DiffEngine.Hunk> changes() { return changes; }
@@ -25,9 +68,85 @@ public class DiffSession {
     public List<String> leftLines() { return leftLines; }
     public List<String> rightLines() { return rightLines; }
 
+    public LineIndex leftIndex() { return leftIndex; }
+    public LineIndex rightIndex() { return rightIndex; }
+    /** Line ids of the last background diff, reused by the next one for unchanged lines. */
+    public DiffEngine.LineCache lineCache() { return lineCache; }
+
+    /**
+     * The cache key for diffing the texts with these options. A side whose text equals
+     * the one digested last time reuses that digest instead of hashing it again.
+     */
+    public ResultKey resultKey(CharSequence leftText, CharSequence rightText, int compareFlags, boolean refine,
+                               DiffEngine.Strategy strategy, DiffEngine.Budget budget, boolean detectMoves) {
+        return new ResultKey(digest(0, leftText), digest(1, rightText), compareFlags, refine, strategy, budget,
+                detectMoves);
+    }
+
+    private synchronized String digest(int side, CharSequence text) {
+        if (text instanceof String s && s.equals(digestedText[side])) return digests[side];
+        String d = digest(text);
+        digestedText[side] = text instanceof String s ? s : null;
+        digests[side] = d;
+        return d;
+    }
+
+    /**
+     * The diff stored under the key with its line pairs over left and right, or null.
+     * Safe to call from diff workers.
+     */
+    public synchronized DiffEngine.Result cachedResult(ResultKey key, LineIndex left, LineIndex right) {
+        DiffEngine.Result hit = resultCache.get(key);
+        if (hit == null) return null;
+        return new DiffEngine.Result(hit.table, hit.approximate, LinePairs.of(hit.table, left, right), hit.moves);
+    }
+
+    public synchronized void cacheResult(ResultKey key, DiffEngine.Result diff) {
+        resultCache.put(key, new DiffEngine.Result(diff.table, diff.approximate, LinePairs.positional(diff.table),
+                diff.moves));
+    }
+
+    /** Hex SHA-256 of the text's UTF-16 code units, fed in blocks. */
+    static String digest(CharSequence text) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        if (text instanceof String s && s.length() <= 1 << 16) {
+            md.update(s.getBytes(StandardCharsets.UTF_16BE));
+            return HexFormat.of().formatHex(md.digest());
+        }
+        byte[] block = new byte[1 << 14];
+        int n = text.length();
+        int i = 0;
+        int fill = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            block[fill] = (byte) (c >>> 8);
+            block[fill + 1] = (byte) c;
+            fill = fill + 2;
+            if (fill == block.length) {
+                md.update(block, 0, fill);
+                fill = 0;
+            }
+            i = i + 1;
+        }
+        md.update(block, 0, fill);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
     public void updateTexts(String leftText, String rightText) {
-        leftLines = List.of(leftText.split("\n", -1));
-        rightLines = List.of(rightText.split("\n", -1));
+        updateTexts(LineIndex.of(leftText), LineIndex.of(rightText));
+    }
+
+    /** Adopts the tokenization the diff was computed from instead of splitting again. */
+    public void updateTexts(LineIndex left, LineIndex right) {
+        leftIndex = left;
+        rightIndex = right;
+        leftLines = left.asList();
+        rightLines = right.asList();
     }
 
     public void updateDiff(DiffEngine.Result diff) {
@@ -42,40 +161,30 @@ public class DiffSession {
     }
 
     public DiffEngine.Hunk findHunkForLine(boolean usingLeftSide, int lineIndex) {
-        int n = currentDiff.hunks.size();
-        int i = 0;
-        while (i < n) {
-            DiffEngine.Hunk h = currentDiff.hunks.get(i);
-            if (h.type() != HunkType.EQUAL) {
-                if (usingLeftSide && lineIndex >= h.leftStart() && lineIndex < h.leftEnd()) {
-                    return h;
-                }
-                if (!usingLeftSide && lineIndex >= h.rightStart() && lineIndex < h.rightEnd()) {
-                    return h;
-                }
-            }
-            i = i + 1;
-        }
-        return null;
+        HunkTable table = currentDiff.table;
+        int row = table.rowAt(usingLeftSide, lineIndex);
+        if (row < 0 || table.type(row) == HunkType.EQUAL) return null;
+        return table.hunk(row);
     }
 
-    public InlineSpan computeInlineSpan(String l, String r) {
-        int lenL = l.length();
-        int lenR = r.length();
-        int min = Math.min(lenL, lenR);
-        int prefix = 0;
-        while (prefix < min && l.charAt(prefix) == r.charAt(prefix)) {
-            prefix = prefix + 1;
-        }
-        int suffix = 0;
-        while (suffix < min - prefix && l.charAt(lenL - 1 - suffix) == r.charAt(lenR - 1 - suffix)) {
-            suffix = suffix + 1;
+    /** Index into {@link #changes()} of the change covering the line, or -1. */
+    public int changeIndexForLine(boolean usingLeftSide, int lineIndex) {
+        return currentDiff.table.changeIndexAt(usingLeftSide, lineIndex);
+    }
+
+    /**
+     * Token-level changed spans of a line pair, cached by the hash of the pair. A hash
+     * hit is only used when the cached lines are equal to the requested ones.
+     */
+    public InlineDiff.Spans inlineSpans(String l, String r) {
+        long key = LineIndex.hash64(l, 0, l.length()) * 0x9e3779b97f4a7c15L ^ LineIndex.hash64(r, 0, r.length());
+        InlineEntry hit = inlineCache.get(key);
+        if (hit != null && hit.left().equals(l) && hit.right().equals(r)) {
+            return hit.spans();
         }
-        int start = prefix;
-        int endL = lenL - suffix;
-        int endR = lenR - suffix;
-        if (start >= endL && start >= endR) return null;
-        return new InlineSpan(start, endL, endR);
+        InlineDiff.Spans spans = InlineDiff.diff(l, r);
+        inlineCache.put(key, new InlineEntry(l, r, spans));
+        return spans;
     }
 
     public String buildDiffOnlyText(boolean leftSide) {
@@ -0,0 +1,45 @@
+package app;
+
+/**
+ * Union of the line ranges edited in one document since its last diff. Lines before
+ * {@link #start()} are untouched; old lines [start, oldEnd) became current lines
+ * [start, newEnd), and everything after is shifted by {@link #delta()}.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class EditWindow {
+
+    private boolean empty = true;
+    private int start;
+    private int oldEnd;
+    private int newEnd;
+
+    /** Current lines [line, line + removed) were replaced by [line, line + added). */
+    public void record(int line, int removed, int added) {
+        if (empty) {
+            empty = false;
+            start = line;
+            oldEnd = line + removed;
+            newEnd = line + added;
+            return;
+        }
+        int end = line + removed;
+        if (end > newEnd) {
+            oldEnd = oldEnd + (end - newEnd);
+        }
+        newEnd = Math.max(newEnd, end) + (added - removed);
+        start = Math.min(start, line);
+    }
+
+    public void clear() {
+        empty = true;
+        start = 0;
+        oldEnd = 0;
+        newEnd = 0;
+    }
+
+    public boolean isEmpty() { return empty; }
+    public int start() { return start; }
+    public int oldEnd() { return oldEnd; }
+    public int newEnd() { return newEnd; }
+    public int delta() { return newEnd - oldEnd; }
+}
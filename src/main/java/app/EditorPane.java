@@ -2,11 +2,16 @@ package app;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import javax.swing.text.Highlighter;
+import javax.swing.text.PlainDocument;
 import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +32,7 @@ public final class EditorPane {
     private final Highlighter highlighter;
     private final List<Object> focusTags = new ArrayList<>();
     private final UndoManager undoManager = new UndoManager();
+    private final List<DocumentListener> documentListeners = new ArrayList<>();
 
     public EditorPane(String fallbackTitle) {
         this.fallbackTitle = fallbackTitle;
@@ -102,12 +108,79 @@ public final class EditorPane {
         return area.getText();
     }
 
+    /** Sets the text, going back to a plain document if a paged one was showing. */
     public void setText(String text) {
+        if (area.getDocument() instanceof PagedDocument) {
+            setDocument(new PlainDocument());
+        }
         area.setText(text == null ? "" : text);
     }
 
+    /**
+     * The text for the diff: the String itself, or for a paged document a snapshot that
+     * decodes pages as it is read.
+     */
+    public CharSequence chars() {
+        if (area.getDocument() instanceof PagedDocument paged) return paged.snapshot();
+        return area.getText();
+    }
+
+    /** True when the text differs from what was loaded or last saved. */
+    public boolean isModified() {
+        if (area.getDocument() instanceof PagedDocument paged) return paged.isModified();
+        return !area.getText().equals(lastSaved);
+    }
+
+    /** Writes the text to target and records it as saved. */
+    public void save(Path target) throws IOException {
+        if (area.getDocument() instanceof PagedDocument paged) {
+            paged.write(target);
+            refreshHeader();
+            return;
+        }
+        String text = area.getText();
+        Files.writeString(target, text);
+        setLastSaved(text);
+    }
+
     public boolean isEmpty() {
-        return text().isEmpty();
+        return area.getDocument().getLength() == 0;
+    }
+
+    /** Registers a listener that stays with the editor when its document is replaced. */
+    public void addDocumentListener(DocumentListener l) {
+        documentListeners.add(l);
+        area.getDocument().addDocumentListener(l);
+    }
+
+    /**
+     * Shows doc in the editor, moving the listeners added through
+     * {@link #addDocumentListener} and the undo manager over from the previous document,
+     * which is closed if it was paged. Undo history does not carry over.
+     */
+    public void setDocument(Document doc) {
+        Document old = area.getDocument();
+        if (doc == old) return;
+        int i = 0;
+        while (i < documentListeners.size()) {
+            old.removeDocumentListener(documentListeners.get(i));
+            i = i + 1;
+        }
+        old.removeUndoableEditListener(undoManager);
+        clearHighlights();
+        int tabs = area.getTabSize();
+        area.setDocument(doc);
+        area.setTabSize(tabs);
+        i = 0;
+        while (i < documentListeners.size()) {
+            doc.addDocumentListener(documentListeners.get(i));
+            i = i + 1;
+        }
+        doc.addUndoableEditListener(undoManager);
+        undoManager.discardAllEdits();
+        if (old instanceof PagedDocument paged) {
+            try { paged.close(); } catch (IOException ignored) {}
+        }
     }
 
     public void clearHighlights() {
@@ -8,16 +8,37 @@ import java.nio.file.Path;
  * Centralized file loader that can read plain text or Excel files.
  * Excel files are converted to a tab-separated text representation per sheet.
  * Returns whether the source was Excel so the caller can treat it as read-only.
+ * From {@link #PAGED_THRESHOLD} bytes on nothing is decoded up front: the file is
+ * mapped as a {@link PagedDocument}, whose line counts come straight from the bytes and
+ * whose pages are decoded when the editor or the diff reads them. Smaller text files
+ * are read whole with {@link Files#readString}. Loading can take a while either way,
+ * so callers run it off the EDT.
  */
 class FileContentLoader {
 
-    record LoadedContent(String text, boolean fromExcel) {}
+    /**
+     * Text files at least this large (in bytes) are opened as a {@link PagedDocument}.
+     * UTF-8 takes at most 3 bytes per char, so they are all longer than
+     * {@link DiffController#LARGE_TEXT_CHARS} and diffed in large file mode anyway.
+     */
+    static final long PAGED_THRESHOLD = 8L * 1024 * 1024;
+
+    /** The decoded text, or an empty text and the document when the file was opened paged. */
+    record LoadedContent(String text, boolean fromExcel, PagedDocument paged) {
+        LoadedContent(String text, boolean fromExcel) {
+            this(text, fromExcel, null);
+        }
+    }
 
     static LoadedContent load(Path path) throws IOException {
         String name = path.getFileName().toString().toLowerCase();
         if (isExcel(name)) {
             return new LoadedContent(readExcel(path), true);
         }
+        long size = Files.size(path);
+        if (size >= PAGED_THRESHOLD) {
+            return new LoadedContent("", false, PagedDocument.open(path));
+        }
         return new LoadedContent(Files.readString(path), false);
     }
 
@@ -67,20 +67,19 @@ class FileDropHandler extends TransferHandler {
             if (paths.size() >= 2) {
                 Path p1 = paths.get(0);
                 Path p2 = paths.get(1);
-                FileContentLoader.LoadedContent t1 = FileContentLoader.load(p1);
-                FileContentLoader.LoadedContent t2 = FileContentLoader.load(p2);
-                if (primaryLeft) {
-                    app.handleBothDrop(p1, t1, p2, t2);
-                } else {
-                    // dropped on right: swap assignment
-                    app.handleBothDrop(p2, t2, p1, t1);
-                }
+                app.loadInBackground(List.of(p1, p2), loaded -> {
+                    if (primaryLeft) {
+                        app.handleBothDrop(p1, loaded.get(0), p2, loaded.get(1));
+                    } else {
+                        // dropped on right: swap assignment
+                        app.handleBothDrop(p2, loaded.get(1), p1, loaded.get(0));
+                    }
+                });
                 return true;
             }
 
             // only one file
             Path p = paths.get(0);
-            FileContentLoader.LoadedContent content = FileContentLoader.load(p);
 
             boolean finalLeft;
             if (overLeft) {
@@ -92,7 +91,7 @@ class FileDropHandler extends TransferHandler {
                 finalLeft = app.isLeftEmpty();
             }
 
-            app.handleSingleDrop(finalLeft, p, content);
+            app.loadInBackground(List.of(p), loaded -> app.handleSingleDrop(finalLeft, p, loaded.get(0)));
             return true;
 
         } catch (Exception ex) {
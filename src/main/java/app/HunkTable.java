@@ -0,0 +1,227 @@
+package app;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import app.DiffEngine.Hunk;
+import app.DiffEngine.HunkType;
+
+/**
+ * Diff hunks stored column-wise: one int[] each for type and the four bounds, so a
+ * large diff is a handful of arrays instead of one record per hunk. Touching rows
+ * of the same type (typically runs of EQUAL lines) are merged while building, except
+ * MOVE rows, which each stand for one moved block. Rows
+ * whose range on a side is non-empty are also indexed per side, which gives O(log n)
+ * lookup of the hunk holding a given line.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class HunkTable {
+
+    private static final HunkType[] TYPES = HunkType.values();
+
+    private final int size;
+    private final int[] type;
+    private final int[] leftStart;
+    private final int[] leftEnd;
+    private final int[] rightStart;
+    private final int[] rightEnd;
+
+    private final int changeCount;
+    private final int[] changeRows;     // k-th change → row
+    private final int[] changeOrdinal;  // row → index among changes, -1 for EQUAL
+    private final int[] leftRows;       // rows with a non-empty left range, in order
+    private final int leftRowCount;
+    private final int[] rightRows;
+    private final int rightRowCount;
+
+    private HunkTable(Builder b) {
+        size = b.size;
+        type = Arrays.copyOf(b.type, size);
+        leftStart = Arrays.copyOf(b.leftStart, size);
+        leftEnd = Arrays.copyOf(b.leftEnd, size);
+        rightStart = Arrays.copyOf(b.rightStart, size);
+        rightEnd = Arrays.copyOf(b.rightEnd, size);
+
+        changeOrdinal = new int[size];
+        int[] changes = new int[size];
+        int[] lRows = new int[size];
+        int[] rRows = new int[size];
+        int c = 0;
+        int lc = 0;
+        int rc = 0;
+        int row = 0;
+        while (row < size) {
+            if (type[row] != HunkType.EQUAL.ordinal()) {
+                changes[c] = row;
+                changeOrdinal[row] = c;
+                c = c + 1;
+            } else {
+                changeOrdinal[row] = -1;
+            }
+            if (leftEnd[row] > leftStart[row]) {
+                lRows[lc] = row;
+                lc = lc + 1;
+            }
+            if (rightEnd[row] > rightStart[row]) {
+                rRows[rc] = row;
+                rc = rc + 1;
+            }
+            row = row + 1;
+        }
+        changeCount = c;
+        changeRows = Arrays.copyOf(changes, c);
+        leftRows = lRows;
+        leftRowCount = lc;
+        rightRows = rRows;
+        rightRowCount = rc;
+    }
+
+    public static HunkTable of(List<Hunk> hunks) {
+        Builder b = new Builder(hunks.size());
+        int i = 0;
+        int n = hunks.size();
+        while (i < n) {
+            Hunk h = hunks.get(i);
+            b.add(h.type(), h.leftStart(), h.leftEnd(), h.rightStart(), h.rightEnd());
+            i = i + 1;
+        }
+        return b.build();
+    }
+
+    public int size() { return size; }
+    public HunkType type(int row) { return TYPES[type[row]]; }
+    public int leftStart(int row) { return leftStart[row]; }
+    public int leftEnd(int row) { return leftEnd[row]; }
+    public int rightStart(int row) { return rightStart[row]; }
+    public int rightEnd(int row) { return rightEnd[row]; }
+    public int start(boolean leftSide, int row) { return leftSide ? leftStart[row] : rightStart[row]; }
+    public int end(boolean leftSide, int row) { return leftSide ? leftEnd[row] : rightEnd[row]; }
+
+    public Hunk hunk(int row) {
+        return new Hunk(TYPES[type[row]], leftStart[row], leftEnd[row], rightStart[row], rightEnd[row]);
+    }
+
+    public int changeCount() { return changeCount; }
+    public int changeRow(int k) { return changeRows[k]; }
+    /** Index of the row among the change-like rows, or -1 for EQUAL rows. */
+    public int changeOrdinal(int row) { return changeOrdinal[row]; }
+
+    /** Row whose range on the given side contains line, or -1 when it lies past the end. */
+    public int rowAt(boolean leftSide, int line) {
+        int at = firstRowEndingAfter(leftSide, line);
+        if (at < 0 || start(leftSide, at) > line) return -1;
+        return at;
+    }
+
+    /**
+     * First row, among those with a non-empty range on the given side, whose range ends
+     * after line; -1 if none. Walking forward from here visits rows in line order.
+     */
+    public int firstRowEndingAfter(boolean leftSide, int line) {
+        int k = firstIndexEndingAfter(leftSide, line);
+        int count = leftSide ? leftRowCount : rightRowCount;
+        if (k >= count) return -1;
+        return leftSide ? leftRows[k] : rightRows[k];
+    }
+
+    /** Change index (into {@link #changes()}) covering line on the given side, or -1. */
+    public int changeIndexAt(boolean leftSide, int line) {
+        int row = rowAt(leftSide, line);
+        return row < 0 ? -1 : changeOrdinal[row];
+    }
+
+    private int firstIndexEndingAfter(boolean leftSide, int line) {
+        int[] rows = leftSide ? leftRows : rightRows;
+        int[] ends = leftSide ? leftEnd : rightEnd;
+        int lo = 0;
+        int hi = leftSide ? leftRowCount : rightRowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[rows[mid]] <= line) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** All rows as Hunk records, created on access. */
+    public List<Hunk> asList() {
+        return new Rows(null, size);
+    }
+
+    /** Change-like rows as Hunk records, created on access. */
+    public List<Hunk> changes() {
+        return new Rows(changeRows, changeCount);
+    }
+
+    private final class Rows extends AbstractList<Hunk> implements RandomAccess {
+        private final int[] rows;
+        private final int count;
+
+        Rows(int[] rows, int count) {
+            this.rows = rows;
+            this.count = count;
+        }
+
+        @Override public Hunk get(int index) {
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+            return hunk(rows == null ? index : rows[index]);
+        }
+
+        @Override public int size() { return count; }
+    }
+
+    /** Appends rows in order; touching rows of the same type other than MOVE are merged. */
+    public static final class Builder {
+        private int size;
+        private int[] type;
+        private int[] leftStart;
+        private int[] leftEnd;
+        private int[] rightStart;
+        private int[] rightEnd;
+
+        public Builder(int expected) {
+            int cap = Math.max(8, expected);
+            type = new int[cap];
+            leftStart = new int[cap];
+            leftEnd = new int[cap];
+            rightStart = new int[cap];
+            rightEnd = new int[cap];
+        }
+
+        public Builder add(HunkType t, int ls, int le, int rs, int re) {
+            if (ls == le && rs == re) return this;
+            if (size > 0 && t != HunkType.MOVE) {
+                int last = size - 1;
+                if (type[last] == t.ordinal() && leftEnd[last] == ls && rightEnd[last] == rs) {
+                    leftEnd[last] = le;
+                    rightEnd[last] = re;
+                    return this;
+                }
+            }
+            if (size == type.length) {
+                int cap = size * 2;
+                type = Arrays.copyOf(type, cap);
+                leftStart = Arrays.copyOf(leftStart, cap);
+                leftEnd = Arrays.copyOf(leftEnd, cap);
+                rightStart = Arrays.copyOf(rightStart, cap);
+                rightEnd = Arrays.copyOf(rightEnd, cap);
+            }
+            type[size] = t.ordinal();
+            leftStart[size] = ls;
+            leftEnd[size] = le;
+            rightStart[size] = rs;
+            rightEnd[size] = re;
+            size = size + 1;
+            return this;
+        }
+
+        public HunkTable build() {
+            return new HunkTable(this);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Token-level diff of one pair of lines, for the inline highlights inside CHANGE hunks.
+ * A line is split into words (letters, digits, '_'), whitespace runs and single other
+ * characters; tokens are kept as offsets into the line, never as substrings. After the
+ * common prefix and suffix are trimmed the remaining tokens go through Myers, and the
+ * changed tokens come back as char spans per side. A pair whose token edit distance
+ * exceeds {@link #MAX_D} gets one span over the trimmed middle instead.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class InlineDiff {
+
+    /** Token edit distance beyond which the middle is highlighted as one span. */
+    static final int MAX_D = 256;
+
+    /** Changed [start, end) char ranges as flat pairs: left[2k], left[2k + 1] is span k. */
+    public record Spans(int[] left, int[] right) {
+        public static final Spans NONE = new Spans(new int[0], new int[0]);
+
+        public int leftCount() { return left.length / 2; }
+        public int rightCount() { return right.length / 2; }
+        public boolean isEmpty() { return left.length == 0 && right.length == 0; }
+    }
+
+    private InlineDiff() {}
+
+    public static Spans diff(String l, String r) {
+        if (l.equals(r)) return Spans.NONE;
+        int[] lt = tokenize(l);
+        int[] rt = tokenize(r);
+        long[] lh = hashes(l, lt);
+        long[] rh = hashes(r, rt);
+        int n = lh.length;
+        int m = rh.length;
+
+        int pre = 0;
+        while (pre < n && pre < m && sameToken(l, lt, lh, pre, r, rt, rh, pre)) {
+            pre = pre + 1;
+        }
+        int suf = 0;
+        while (suf < n - pre && suf < m - pre && sameToken(l, lt, lh, n - 1 - suf, r, rt, rh, m - 1 - suf)) {
+            suf = suf + 1;
+        }
+
+        SpanBuilder left = new SpanBuilder(lt);
+        SpanBuilder right = new SpanBuilder(rt);
+        if (!myers(l, lt, lh, pre, n - suf, r, rt, rh, pre, m - suf, left, right)) {
+            left.mark(pre, n - suf);
+            right.mark(pre, m - suf);
+        }
+        return new Spans(left.build(), right.build());
+    }
+
+    /** Token boundaries: token i is [bounds[i], bounds[i + 1]). */
+    static int[] tokenize(String s) {
+        int len = s.length();
+        int[] bounds = new int[Math.min(len, 64) + 1];
+        int count = 0;
+        int i = 0;
+        while (i < len) {
+            if (count + 1 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count] = i;
+            count = count + 1;
+            int kind = kind(s.charAt(i));
+            i = i + 1;
+            if (kind != 2) {
+                while (i < len && kind(s.charAt(i)) == kind) {
+                    i = i + 1;
+                }
+            }
+        }
+        bounds[count] = len;
+        return Arrays.copyOf(bounds, count + 1);
+    }
+
+    /** 0 = word char, 1 = whitespace, 2 = anything else (one token per char). */
+    private static int kind(char c) {
+        if (Character.isLetterOrDigit(c) || c == '_') return 0;
+        if (Character.isWhitespace(c)) return 1;
+        return 2;
+    }
+
+    private static long[] hashes(String s, int[] bounds) {
+        long[] h = new long[bounds.length - 1];
+        int i = 0;
+        while (i < h.length) {
+            h[i] = LineIndex.hash64(s, bounds[i], bounds[i + 1]);
+            i = i + 1;
+        }
+        return h;
+    }
+
+    private static boolean sameToken(String a, int[] at, long[] ah, int i, String b, int[] bt, long[] bh, int j) {
+        if (ah[i] != bh[j]) return false;
+        int len = at[i + 1] - at[i];
+        return len == bt[j + 1] - bt[j] && a.regionMatches(at[i], b, bt[j], len);
+    }
+
+    /**
+     * Classic Myers over tokens [aLo, aHi) × [bLo, bHi), marking the tokens that are not
+     * part of the LCS. Returns false when the distance exceeds {@link #MAX_D}.
+     */
+    private static boolean myers(String a, int[] at, long[] ah, int aLo, int aHi,
+                                 String b, int[] bt, long[] bh, int bLo, int bHi,
+                                 SpanBuilder left, SpanBuilder right) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        if (n == 0 || m == 0) {
+            left.mark(aLo, aHi);
+            right.mark(bLo, bHi);
+            return true;
+        }
+        int max = Math.min(n + m, MAX_D);
+        int off = max + 1;
+        int[] v = new int[2 * max + 3];
+        int[][] trace = new int[max + 1][];
+        int d = 0;
+        while (d <= max) {
+            int k = -d;
+            while (k <= d) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && sameToken(a, at, ah, aLo + x, b, bt, bh, bLo + y)) {
+                    x = x + 1;
+                    y = y + 1;
+                }
+                v[off + k] = x;
+                if (x >= n && y >= m) {
+                    trace[d] = Arrays.copyOfRange(v, off - d, off + d + 1);
+                    backtrack(trace, d, n, m, aLo, bLo, left, right);
+                    return true;
+                }
+                k = k + 2;
+            }
+            trace[d] = Arrays.copyOfRange(v, off - d, off + d + 1);
+            d = d + 1;
+        }
+        return false;
+    }
+
+    /** Walks the trace back from (n, m), marking the deleted and inserted tokens. */
+    private static void backtrack(int[][] trace, int dEnd, int n, int m, int aLo, int bLo,
+                                  SpanBuilder left, SpanBuilder right) {
+        int x = n;
+        int y = m;
+        int d = dEnd;
+        while (d > 0) {
+            int[] prev = trace[d - 1];   // covers k in [-(d - 1), d - 1]
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[k - 1 + d - 1] < prev[k + 1 + d - 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = prev[prevK + d - 1];
+            int prevY = prevX - prevK;
+            // the snake from the end of the step back to (x, y) is common
+            if (prevK == k + 1) {
+                right.mark(bLo + prevY, bLo + prevY + 1);
+            } else {
+                left.mark(aLo + prevX, aLo + prevX + 1);
+            }
+            x = prevX;
+            y = prevY;
+            d = d - 1;
+        }
+    }
+
+    /** Collects marked token ranges and turns them into merged char spans. */
+    private static final class SpanBuilder {
+        private final int[] bounds;
+        private final boolean[] changed;
+
+        SpanBuilder(int[] bounds) {
+            this.bounds = bounds;
+            this.changed = new boolean[bounds.length - 1];
+        }
+
+        void mark(int from, int to) {
+            int i = from;
+            while (i < to) {
+                changed[i] = true;
+                i = i + 1;
+            }
+        }
+
+        int[] build() {
+            int[] out = new int[8];
+            int count = 0;
+            int i = 0;
+            while (i < changed.length) {
+                if (!changed[i]) {
+                    i = i + 1;
+                    continue;
+                }
+                int j = i;
+                while (j < changed.length && changed[j]) {
+                    j = j + 1;
+                }
+                if (count + 2 > out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                out[count] = bounds[i];
+                out[count + 1] = bounds[j];
+                count = count + 2;
+                i = j;
+            }
+            return Arrays.copyOf(out, count);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package app;
+
+import java.util.function.Function;
+
+/**
+ * Built-in line comparison modes, combined as bit flags. They are applied while hashing
+ * and comparing the original characters in place, so the engine needs no normalized
+ * copy of each line. Whitespace means the set matched by the regex {@code \s}.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class LineCompare {
+
+    /** Whitespace anywhere in a line is skipped. */
+    public static final int IGNORE_WHITESPACE = 1;
+    /** Letters compare case-insensitively, as {@link String#equalsIgnoreCase}. */
+    public static final int IGNORE_CASE = 2;
+    /**
+     * Whitespace-only lines are left out of the diff and attached to the neighbouring
+     * rows afterwards, so an EQUAL row may span a different number of lines per side.
+     */
+    public static final int IGNORE_BLANK_LINES = 4;
+    /** Whitespace at the end of a line is skipped. */
+    public static final int IGNORE_TRAILING_WHITESPACE = 8;
+    /** A '\r' ending the line is skipped, so CRLF and LF texts compare equal. */
+    public static final int IGNORE_LINE_ENDINGS = 16;
+
+    private LineCompare() {}
+
+    /** Normalizer the engine recognises and applies as flags instead of calling it per line. */
+    public static Normalizer normalizer(int flags) {
+        return new Normalizer(flags);
+    }
+
+    /** Flags the normalizer stands for: 0 for none/identity, -1 when it must see each line. */
+    static int flagsOf(Function<String, String> normalizer) {
+        if (normalizer == null || normalizer == Function.<String>identity()) return 0;
+        if (normalizer instanceof Normalizer n) return n.flags;
+        return -1;
+    }
+
+    /** 64-bit hash of s[from, to) as seen under flags; with 0 it is {@link LineIndex#hash64(CharSequence, int, int)}. */
+    public static long hash64(CharSequence s, int from, int to, int flags) {
+        int f = flags & ~IGNORE_BLANK_LINES;
+        if (f == 0) return LineIndex.hash64(s, from, to);
+        boolean skipWs = (f & IGNORE_WHITESPACE) != 0;
+        boolean fold = (f & IGNORE_CASE) != 0;
+        int end = effectiveEnd(s, from, to, f);
+        long h = LineIndex.FNV_BASIS;
+        int i = from;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (!skipWs || !isWhitespace(c)) {
+                h = (h ^ (fold ? fold(c) : c)) * LineIndex.FNV_PRIME;
+            }
+            i = i + 1;
+        }
+        return LineIndex.mix64(h);
+    }
+
+    /** True when a[aFrom, aTo) and b[bFrom, bTo) compare equal under flags. */
+    public static boolean equal(CharSequence a, int aFrom, int aTo, CharSequence b, int bFrom, int bTo, int flags) {
+        int f = flags & ~IGNORE_BLANK_LINES;
+        boolean skipWs = (f & IGNORE_WHITESPACE) != 0;
+        boolean fold = (f & IGNORE_CASE) != 0;
+        int aEnd = effectiveEnd(a, aFrom, aTo, f);
+        int bEnd = effectiveEnd(b, bFrom, bTo, f);
+        if (!skipWs && aEnd - aFrom != bEnd - bFrom) return false;
+        int i = aFrom;
+        int j = bFrom;
+        while (true) {
+            if (skipWs) {
+                while (i < aEnd && isWhitespace(a.charAt(i))) {
+                    i = i + 1;
+                }
+                while (j < bEnd && isWhitespace(b.charAt(j))) {
+                    j = j + 1;
+                }
+            }
+            if (i == aEnd || j == bEnd) return i == aEnd && j == bEnd;
+            char x = a.charAt(i);
+            char y = b.charAt(j);
+            if (x != y && (!fold || fold(x) != fold(y))) return false;
+            i = i + 1;
+            j = j + 1;
+        }
+    }
+
+    /** True when s[from, to) holds only whitespace. */
+    public static boolean isBlank(CharSequence s, int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (!isWhitespace(s.charAt(i))) return false;
+            i = i + 1;
+        }
+        return true;
+    }
+
+    /** The line as the flags see it; {@link #IGNORE_BLANK_LINES} needs the whole text and is not applied. */
+    public static String normalize(String s, int flags) {
+        int f = flags & ~IGNORE_BLANK_LINES;
+        if (f == 0) return s;
+        boolean skipWs = (f & IGNORE_WHITESPACE) != 0;
+        boolean fold = (f & IGNORE_CASE) != 0;
+        int end = effectiveEnd(s, 0, s.length(), f);
+        StringBuilder sb = new StringBuilder(end);
+        int i = 0;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (!skipWs || !isWhitespace(c)) {
+                sb.append(fold ? fold(c) : c);
+            }
+            i = i + 1;
+        }
+        return sb.toString();
+    }
+
+    /** End of the line once trailing whitespace or a trailing '\r' is dropped, as the flags ask. */
+    private static int effectiveEnd(CharSequence s, int from, int to, int flags) {
+        int end = to;
+        if ((flags & (IGNORE_WHITESPACE | IGNORE_TRAILING_WHITESPACE)) != 0) {
+            while (end > from && isWhitespace(s.charAt(end - 1))) {
+                end = end - 1;
+            }
+        } else if ((flags & IGNORE_LINE_ENDINGS) != 0 && end > from && s.charAt(end - 1) == '\r') {
+            end = end - 1;
+        }
+        return end;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** A normalizer backed by comparison flags; {@link #apply} gives the same equality as the flags. */
+    public static final class Normalizer implements Function<String, String> {
+        private final int flags;
+
+        private Normalizer(int flags) {
+            this.flags = flags;
+        }
+
+        public int flags() { return flags; }
+
+        @Override public String apply(String s) {
+            return normalize(s, flags);
+        }
+    }
+}
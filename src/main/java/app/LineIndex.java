@@ -0,0 +1,280 @@
+package app;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Line start offsets over a CharSequence, split on '\n' the same way as
+ * {@code text.split("\n", -1)}: a trailing newline yields a final empty line.
+ * Lines are addressed by index and compared/hashed in place, so the engine, the
+ * session and the merge code can share one tokenization without a String per line.
+ * Strings are scanned with String.indexOf, large ones in parallel chunks. A text that
+ * already knows where its newlines are ({@link Newlines}, such as a paged document's
+ * snapshot) is not scanned at all: its line starts are asked for as they are needed.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class LineIndex {
+
+    /** A text that can locate its own newlines without a scan. */
+    interface Newlines {
+        /** Number of '\n' chars in the text. */
+        int newlineCount();
+        /** Offset of the k-th '\n' (from 0). */
+        int newlineAt(int k);
+    }
+
+    private final CharSequence text;
+    /** starts[i] is the first char of line i; starts[count] is text.length() + 1. Null for {@link Newlines}. */
+    private final int[] starts;
+    private final Newlines newlines;
+    private final int count;
+
+    private LineIndex(CharSequence text, int[] starts, int count) {
+        this.text = text;
+        this.starts = starts;
+        this.newlines = null;
+        this.count = count;
+    }
+
+    private LineIndex(CharSequence text, Newlines newlines) {
+        this.text = text;
+        this.starts = null;
+        this.newlines = newlines;
+        this.count = newlines.newlineCount() + 1;
+    }
+
+    /** Strings from this many chars on are split on the common ForkJoinPool. */
+    static final int PARALLEL_CHARS = 1 << 22;
+
+    public static LineIndex of(CharSequence text) {
+        if (text instanceof Newlines known) return new LineIndex(text, known);
+        if (text instanceof String s && s.length() >= PARALLEL_CHARS
+                && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return ofParallel(s);
+        }
+        int n = text.length();
+        int[] starts;
+        int count;
+        if (text instanceof String s) {
+            int[] found = lineStarts(s, 0, n);
+            count = found[0];
+            starts = found;
+            starts[0] = 0;
+        } else {
+            starts = new int[Math.max(16, n / 32 + 2)];
+            count = 0;
+            starts[0] = 0;
+            int i = 0;
+            while (i < n) {
+                if (text.charAt(i) == '\n') {
+                    count = count + 1;
+                    if (count + 1 >= starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                    }
+                    starts[count] = i + 1;
+                }
+                i = i + 1;
+            }
+        }
+        count = count + 1;
+        if (count >= starts.length) {
+            starts = Arrays.copyOf(starts, count + 1);
+        }
+        starts[count] = n + 1;
+        return new LineIndex(text, starts, count);
+    }
+
+    /**
+     * Splits text in equal char ranges whose newlines are collected in parallel and then
+     * concatenated in order. Only Strings take this path: other CharSequences (such as a
+     * paged document snapshot) need not be safe to read from several threads.
+     */
+    private static LineIndex ofParallel(String text) {
+        int n = text.length();
+        int chunks = Math.max(2, Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), n / (PARALLEL_CHARS / 8)));
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>(chunks);
+        int c = 0;
+        while (c < chunks) {
+            int from = (int) ((long) n * c / chunks);
+            int to = (int) ((long) n * (c + 1) / chunks);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> lineStarts(text, from, to)));
+            c = c + 1;
+        }
+        int[][] found = new int[chunks][];
+        int total = 0;
+        c = 0;
+        while (c < chunks) {
+            found[c] = tasks.get(c).join();
+            total = total + found[c][0];
+            c = c + 1;
+        }
+        int[] starts = new int[total + 2];
+        int at = 1;
+        c = 0;
+        while (c < chunks) {
+            System.arraycopy(found[c], 1, starts, at, found[c][0]);
+            at = at + found[c][0];
+            c = c + 1;
+        }
+        starts[at] = n + 1;
+        return new LineIndex(text, starts, total + 1);
+    }
+
+    /**
+     * Starts of the lines following the newlines in [from, to); element 0 holds their
+     * count. String.indexOf is a HotSpot intrinsic that scans with SIMD instructions;
+     * the chunk's last newline is found first so that no search runs past to.
+     */
+    private static int[] lineStarts(String text, int from, int to) {
+        int last = to - 1;
+        while (last >= from && text.charAt(last) != '\n') {
+            last = last - 1;
+        }
+        int[] out = new int[Math.max(16, (to - from) / 32 + 2)];
+        int count = 0;
+        if (last < from) {
+            out[0] = 0;
+            return out;
+        }
+        int i = text.indexOf('\n', from);
+        while (true) {
+            count = count + 1;
+            if (count + 1 >= out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[count] = i + 1;
+            if (i == last) break;
+            i = text.indexOf('\n', i + 1);
+        }
+        out[0] = count;
+        return out;
+    }
+
+    /**
+     * The index of text, which is before's text with the lines in edit replaced: only
+     * the edited lines are scanned and the starts after them are shifted. Splits text
+     * in full when it does not line up with before and edit.
+     */
+    public static LineIndex spliced(LineIndex before, CharSequence text, EditWindow edit) {
+        if (edit.isEmpty() || before.starts == null) return of(text);
+        int s = edit.start();
+        int oldEnd = edit.oldEnd();
+        int newEnd = edit.newEnd();
+        int count = before.count + edit.delta();
+        if (s < 0 || s >= before.count || oldEnd > before.count || newEnd > count || newEnd <= s) {
+            return of(text);
+        }
+        int n = text.length();
+        int shift = n - before.text.length();
+        int[] starts = new int[count + 1];
+        System.arraycopy(before.starts, 0, starts, 0, s + 1);
+        int k = s + 1;
+        int pos = starts[s];
+        while (k <= newEnd) {
+            int nl = pos;
+            while (nl < n && text.charAt(nl) != '\n') {
+                nl = nl + 1;
+            }
+            if (nl == n && k < count) return of(text);
+            starts[k] = nl + 1;
+            pos = nl + 1;
+            k = k + 1;
+        }
+        if (starts[newEnd] != before.starts[oldEnd] + shift) return of(text);
+        int tail = count - newEnd;
+        int i = 1;
+        while (i <= tail) {
+            starts[newEnd + i] = before.starts[oldEnd + i] + shift;
+            i = i + 1;
+        }
+        return new LineIndex(text, starts, count);
+    }
+
+    /** starts[i], from the table or from the text's own newlines. */
+    private int at(int i) {
+        if (starts != null) return starts[i];
+        if (i == 0) return 0;
+        if (i == count) return text.length() + 1;
+        return newlines.newlineAt(i - 1) + 1;
+    }
+
+    public CharSequence text() { return text; }
+    public int lineCount() { return count; }
+    public int start(int line) { return at(line); }
+    /** Exclusive end of the line, not counting its '\n'. */
+    public int end(int line) { return at(line + 1) - 1; }
+    public int length(int line) { return at(line + 1) - 1 - at(line); }
+
+    public String line(int line) {
+        return text.subSequence(at(line), at(line + 1) - 1).toString();
+    }
+
+    /** Same value as {@code line(line).hashCode()}, computed in place. */
+    public int hash(int line) {
+        int h = 0;
+        int i = at(line);
+        int end = at(line + 1) - 1;
+        while (i < end) {
+            h = 31 * h + text.charAt(i);
+            i = i + 1;
+        }
+        return h;
+    }
+
+    /** 64-bit hash of the line, as {@link #hash64(CharSequence, int, int)}. */
+    public long hash64(int line) {
+        return hash64(text, at(line), at(line + 1) - 1);
+    }
+
+    static final long FNV_BASIS = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    /** FNV-1a over the chars of s[from, to), finished with a 64-bit avalanche mix. */
+    public static long hash64(CharSequence s, int from, int to) {
+        long h = FNV_BASIS;
+        int i = from;
+        while (i < to) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+            i = i + 1;
+        }
+        return mix64(h);
+    }
+
+    static long mix64(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public boolean sameLine(int line, LineIndex other, int otherLine) {
+        int len = length(line);
+        if (len != other.length(otherLine)) return false;
+        int i = at(line);
+        int j = other.at(otherLine);
+        int end = i + len;
+        while (i < end) {
+            if (text.charAt(i) != other.text.charAt(j)) return false;
+            i = i + 1;
+            j = j + 1;
+        }
+        return true;
+    }
+
+    /** Read-only view that materializes a line only when it is asked for. */
+    public List<String> asList() {
+        return new Lines();
+    }
+
+    private final class Lines extends AbstractList<String> implements RandomAccess {
+        @Override public String get(int index) {
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+            return line(index);
+        }
+        @Override public int size() { return count; }
+    }
+}
@@ -88,6 +88,11 @@ public class LineNumberGutter extends JComponent implements DocumentListener, Pr
     @Override public void propertyChange(PropertyChangeEvent evt) {
         if ("font".equals(evt.getPropertyName())) {
             repaint();
+        } else if ("document".equals(evt.getPropertyName())) {
+            if (evt.getOldValue() instanceof javax.swing.text.Document old) old.removeDocumentListener(this);
+            if (evt.getNewValue() instanceof javax.swing.text.Document doc) doc.addDocumentListener(this);
+            maybeUpdate();
+            repaint();
         }
     }
 }
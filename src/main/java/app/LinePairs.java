@@ -0,0 +1,220 @@
+package app;
+
+import app.DiffEngine.HunkType;
+
+/**
+ * Which line on the other side each line of a CHANGE hunk corresponds to. Lines are
+ * matched by similarity rather than position: every line gets a 256-bit signature of
+ * its character trigrams (whitespace skipped), and a banded alignment over the hunk
+ * pairs lines whose signatures overlap enough, in order, maximising total similarity.
+ * The band is {@link #WINDOW} lines either side of the scaled diagonal, so a hunk costs
+ * O(n·k). Hunks are paired on first query; without texts lines pair by position.
+ * Queries are expected on one thread (the EDT).
+ * No use of ++ or -- operators (per user request).
+ */
+public final class LinePairs {
+
+    /** Lines either side of the diagonal the alignment may reach. */
+    static final int WINDOW = 16;
+    /** Dice similarity, in percent, below which two lines are not paired. */
+    static final int MIN_SIMILARITY = 50;
+    /** Hunks with more lines than this on either side pair by position. */
+    static final int MAX_HUNK_LINES = 50000;
+
+    private static final byte DIAG = 0;
+    private static final byte UP = 1;
+    private static final byte LEFT = 2;
+
+    private final HunkTable table;
+    private final LineIndex left;
+    private final LineIndex right;
+    private final int[][] leftPartner;    // per change ordinal, null until paired
+    private final int[][] rightPartner;
+
+    private LinePairs(HunkTable table, LineIndex left, LineIndex right) {
+        this.table = table;
+        this.left = left;
+        this.right = right;
+        int n = left == null ? 0 : table.changeCount();
+        this.leftPartner = new int[n][];
+        this.rightPartner = new int[n][];
+    }
+
+    /** Similarity pairing over the given texts, computed per hunk on demand. */
+    public static LinePairs of(HunkTable table, LineIndex left, LineIndex right) {
+        return new LinePairs(table, left, right);
+    }
+
+    /** The j-th line of each side of a CHANGE hunk pairs with the j-th of the other. */
+    public static LinePairs positional(HunkTable table) {
+        return new LinePairs(table, null, null);
+    }
+
+    /** Line on the other side paired with line, or -1 if it has none or is not in a CHANGE hunk. */
+    public int partner(boolean leftSide, int line) {
+        int row = table.rowAt(leftSide, line);
+        if (row < 0 || table.type(row) != HunkType.CHANGE) return -1;
+        int ls = table.leftStart(row);
+        int le = table.leftEnd(row);
+        int rs = table.rightStart(row);
+        int re = table.rightEnd(row);
+        if (left == null || le - ls > MAX_HUNK_LINES || re - rs > MAX_HUNK_LINES) {
+            int offset = line - table.start(leftSide, row);
+            int otherStart = leftSide ? rs : ls;
+            int otherEnd = leftSide ? re : le;
+            return otherStart + offset < otherEnd ? otherStart + offset : -1;
+        }
+        int k = table.changeOrdinal(row);
+        if (leftPartner[k] == null) {
+            pair(k, ls, le, rs, re);
+        }
+        int p = leftSide ? leftPartner[k][line - ls] : rightPartner[k][line - rs];
+        return p < 0 ? -1 : p + (leftSide ? rs : ls);
+    }
+
+    private void pair(int k, int ls, int le, int rs, int re) {
+        int n = le - ls;
+        int m = re - rs;
+        long[] sl = signatures(left, ls, le);
+        long[] sr = signatures(right, rs, re);
+        int[] lp = new int[n];
+        int[] rp = new int[m];
+        java.util.Arrays.fill(lp, -1);
+        java.util.Arrays.fill(rp, -1);
+        // run the band over the longer side so its slope stays at most one line per row
+        if (n >= m) {
+            align(sl, n, sr, m, lp, rp);
+        } else {
+            align(sr, m, sl, n, rp, lp);
+        }
+        leftPartner[k] = lp;
+        rightPartner[k] = rp;
+    }
+
+    /**
+     * Banded DP over a (p lines, p ≥ q) × b (q lines): each cell keeps the best total
+     * similarity of an in-order pairing of the prefixes. Fills aPartner/bPartner with
+     * 0-based indices into the other side.
+     */
+    private static void align(long[] sa, int p, long[] sb, int q, int[] aPartner, int[] bPartner) {
+        int width = 2 * WINDOW + 2;
+        int[] prev = new int[q + 1];
+        int[] cur = new int[q + 1];
+        int[] los = new int[p + 1];
+        int[] his = new int[p + 1];
+        byte[] dir = new byte[(p + 1) * width];
+
+        his[0] = Math.min(q, WINDOW);
+        int j = 0;
+        while (j <= his[0]) {
+            prev[j] = 0;
+            dir[j] = LEFT;
+            j = j + 1;
+        }
+        int i = 1;
+        while (i <= p) {
+            int c = (int) ((long) i * q / p);
+            int lo = Math.max(0, c - WINDOW);
+            int hi = Math.min(q, c + WINDOW);
+            int plo = los[i - 1];
+            int phi = his[i - 1];
+            los[i] = lo;
+            his[i] = hi;
+            j = lo;
+            while (j <= hi) {
+                int best = Integer.MIN_VALUE;
+                byte d = UP;
+                if (j >= plo && j <= phi) {
+                    best = prev[j];
+                }
+                if (j > lo && cur[j - 1] > best) {
+                    best = cur[j - 1];
+                    d = LEFT;
+                }
+                if (j > 0 && j - 1 >= plo && j - 1 <= phi && prev[j - 1] != Integer.MIN_VALUE) {
+                    int s = similarity(sa, i - 1, sb, j - 1);
+                    if (s >= MIN_SIMILARITY && prev[j - 1] + s >= best) {
+                        best = prev[j - 1] + s;
+                        d = DIAG;
+                    }
+                }
+                cur[j] = best;
+                dir[i * width + j - lo] = d;
+                j = j + 1;
+            }
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+            i = i + 1;
+        }
+
+        i = p;
+        j = q;
+        while (i > 0 || j > 0) {
+            byte d = dir[i * width + j - los[i]];
+            if (i == 0) {
+                d = LEFT;
+            }
+            if (d == DIAG) {
+                aPartner[i - 1] = j - 1;
+                bPartner[j - 1] = i - 1;
+                i = i - 1;
+                j = j - 1;
+            } else if (d == UP) {
+                i = i - 1;
+            } else {
+                j = j - 1;
+            }
+        }
+    }
+
+    /** Four longs per line: bit h is set for each trigram (of non-whitespace chars) hashing to h. */
+    private static long[] signatures(LineIndex lines, int from, int to) {
+        long[] sig = new long[4 * (to - from)];
+        CharSequence text = lines.text();
+        int line = from;
+        while (line < to) {
+            int base = 4 * (line - from);
+            int end = lines.end(line);
+            int i = lines.start(line);
+            int c1 = -1;
+            int c2 = -1;
+            int seen = 0;
+            while (i < end) {
+                char c = text.charAt(i);
+                i = i + 1;
+                if (Character.isWhitespace(c)) continue;
+                seen = seen + 1;
+                if (seen >= 3) {
+                    setBit(sig, base, (c1 * 31 + c2) * 31 + c);
+                }
+                c1 = c2;
+                c2 = c;
+            }
+            if (seen > 0 && seen < 3) {
+                // too short for a trigram: the whole line is the one gram
+                setBit(sig, base, (c1 * 31 + c2) * 961 + 7);
+            }
+            line = line + 1;
+        }
+        return sig;
+    }
+
+    private static void setBit(long[] sig, int base, int gram) {
+        int h = gram * 0x9e3779b9;
+        int bit = h >>> 24;
+        sig[base + (bit >>> 6)] |= 1L << (bit & 63);
+    }
+
+    /** Dice coefficient of two signatures in percent; two empty (blank) lines count as equal. */
+    private static int similarity(long[] sa, int i, long[] sb, int j) {
+        int a = 4 * i;
+        int b = 4 * j;
+        int common = Long.bitCount(sa[a] & sb[b]) + Long.bitCount(sa[a + 1] & sb[b + 1])
+                + Long.bitCount(sa[a + 2] & sb[b + 2]) + Long.bitCount(sa[a + 3] & sb[b + 3]);
+        int total = Long.bitCount(sa[a]) + Long.bitCount(sa[a + 1]) + Long.bitCount(sa[a + 2]) + Long.bitCount(sa[a + 3])
+                + Long.bitCount(sb[b]) + Long.bitCount(sb[b + 1]) + Long.bitCount(sb[b + 2]) + Long.bitCount(sb[b + 3]);
+        if (total == 0) return 100;
+        return 200 * common / total;
+    }
+}
@@ -57,6 +57,11 @@ public class MergeController {
         DiffEngine.Hunk h = changes.get(session.currentIndex());
         if (h.type() == DiffEngine.HunkType.EQUAL) return; // no-op on equal blocks
         if (insertModeSupplier.get() && h.type() == DiffEngine.HunkType.CHANGE) return; // avoid rewrites in insert mode
+        if (h.type() == DiffEngine.HunkType.MOVE) {
+            applyMove(leftToRight, h);
+            recompute.run();
+            return;
+        }
         if (leftToRight) {
             // only copy if there is content on the left for this hunk
             if (h.leftStart() < h.leftEnd()) {
@@ -86,6 +91,12 @@ public class MergeController {
         DiffEngine.Hunk h = changes.get(session.currentIndex());
         if (h.type() == DiffEngine.HunkType.EQUAL) return;
         if (insertModeSupplier.get() && h.type() == DiffEngine.HunkType.CHANGE) return; // avoid rewrites in insert mode
+        if (h.type() == DiffEngine.HunkType.MOVE) {
+            // either end of a move deletes the block on the chosen side
+            DiffEngine.Hunk m = moveOf(h);
+            if (m == null) return;
+            h = m;
+        }
         if (onLeft) {
             if (h.leftStart() < h.leftEnd()) {
                 replaceLines(left.area(), h.leftStart(), h.leftEnd(), List.of());
@@ -99,15 +110,14 @@ public class MergeController {
     }
 
     public void handleArrowCopy(boolean leftToRight, int lineIndex, boolean bulk) {
-        List<DiffEngine.Hunk> changes = session.changes();
         DiffEngine.Hunk h = session.findHunkForLine(leftToRight, lineIndex);
         if (h == null) return;
-        int idx = changes.indexOf(h);
+        int idx = session.changeIndexForLine(leftToRight, lineIndex);
         if (idx >= 0) {
             session.setCurrentIndex(idx);
             updateNavButtons.run();
         }
-        if (bulk) {
+        if (bulk || h.type() == DiffEngine.HunkType.MOVE) {
             applyCopy(leftToRight);
             return;
         }
@@ -161,6 +171,42 @@ public class MergeController {
         return suppressUndoCapture;
     }
 
+    /** The move linking the source and destination of a MOVE row, or null. */
+    private DiffEngine.Hunk moveOf(DiffEngine.Hunk row) {
+        boolean source = row.leftEnd() > row.leftStart();
+        return session.currentDiff().moveAt(source, source ? row.leftStart() : row.rightStart());
+    }
+
+    /**
+     * Copies a move as one edit: the block is taken out of the target side and put back
+     * where the other side has it, i.e. at the target line of the other end's MOVE row.
+     */
+    private void applyMove(boolean leftToRight, DiffEngine.Hunk row) {
+        DiffEngine.Hunk m = moveOf(row);
+        if (m == null) return;
+        HunkTable table = session.currentDiff().table;
+        JTextArea target = leftToRight ? right.area() : left.area();
+        List<String> lines = leftToRight ? session.rightLines() : session.leftLines();
+        int from = leftToRight ? m.rightStart() : m.leftStart();
+        int to = leftToRight ? m.rightEnd() : m.leftEnd();
+        int otherRow = table.rowAt(leftToRight, leftToRight ? m.leftStart() : m.rightStart());
+        if (otherRow < 0) return;
+        int at = table.start(!leftToRight, otherRow);
+        if (at >= from && at <= to) return;
+
+        List<String> block = lines.subList(from, to);
+        List<String> reordered = new java.util.ArrayList<>();
+        if (at > to) {
+            reordered.addAll(lines.subList(to, at));
+            reordered.addAll(block);
+            replaceLines(target, from, at, reordered);
+        } else {
+            reordered.addAll(block);
+            reordered.addAll(lines.subList(at, from));
+            replaceLines(target, at, to, reordered);
+        }
+    }
+
     private void copySingleLine(boolean leftToRight, DiffEngine.Hunk h, int lineIndex) {
         // only copy from the side that has content for this hunk
         if (leftToRight && h.leftStart() >= h.leftEnd()) return;
@@ -178,6 +224,19 @@ public class MergeController {
 
         boolean insertOnly = (leftToRight && h.rightStart() == h.rightEnd())
                 || (!leftToRight && h.leftStart() == h.leftEnd());
+        if (h.type() == DiffEngine.HunkType.CHANGE) {
+            // replace the similar counterpart; an unpaired line goes in after the previous pair
+            LinePairs pairs = session.currentDiff().pairs;
+            destLine = pairs.partner(leftToRight, lineIndex);
+            insertOnly = destLine < 0;
+            int prev = lineIndex - 1;
+            while (destLine < 0 && prev >= srcStart) {
+                int p = pairs.partner(leftToRight, prev);
+                if (p >= 0) destLine = p + 1;
+                prev = prev - 1;
+            }
+            if (destLine < 0) destLine = dstStart;
+        }
         if (insertOnly) {
             insertLines(target, destLine, payload);
         } else {
@@ -189,46 +248,44 @@ public class MergeController {
         try {
             diffController.setSuppressDocEvents(true);
             boolean onLeft = area == left.area();
+            javax.swing.text.Document doc = area.getDocument();
             int lineCount = area.getLineCount();
             int startOffset;
             if (lineCount <= 0) {
                 startOffset = 0;
             } else if (startLine >= lineCount) {
-                startOffset = area.getDocument().getLength();
+                startOffset = doc.getLength();
             } else {
                 startOffset = area.getLineStartOffset(Math.max(0, startLine));
             }
             int endOffset;
-            if (endLine <= 0) {
+            if (endLine <= startLine) {
                 endOffset = startOffset;
             } else if (endLine >= lineCount) {
-                endOffset = area.getDocument().getLength();
+                endOffset = doc.getLength();
             } else {
                 endOffset = area.getLineStartOffset(endLine);
             }
-            String replacement = String.join("\n", with);
-            applyWithCustomUndo(area, startOffset, endOffset, replacement, onLeft);
+            String insertText = with.isEmpty() ? "" : String.join("\n", with) + "\n";
+            if (!insertText.isEmpty() && startOffset == doc.getLength() && startOffset > 0
+                    && !"\n".equals(doc.getText(startOffset - 1, 1))) {
+                // appending after a last line without a newline: start a new line instead
+                insertText = "\n" + insertText.substring(0, insertText.length() - 1);
+            }
+            applyWithCustomUndo(area, startOffset, endOffset, insertText, onLeft);
         } catch (Exception ex) {
             statusSetter.accept("Edit failed: " + ex.getMessage());
-            tryDirectReplace(area, startLine, endLine, with);
+            // paged documents are never copied into a String; the failed edit is dropped
+            if (!(area.getDocument() instanceof PagedDocument)) {
+                tryDirectReplace(area, startLine, endLine, with);
+            }
         } finally {
             diffController.setSuppressDocEvents(false);
         }
     }
 
     private void insertLines(JTextArea area, int atLine, List<String> with) {
-        tryDirectInsert(area, atLine, with);
-    }
-
-    private void tryDirectInsert(JTextArea area, int atLine, List<String> with) {
-        try {
-            String text = area.getText();
-            String insertion = String.join("\n", with);
-            String[] lines = text.split("\n", -1);
-            java.util.List<String> newLines = new java.util.ArrayList<>(java.util.Arrays.asList(lines));
-            newLines.add(Math.max(0, Math.min(atLine, newLines.size())), insertion);
-            area.setText(String.join("\n", newLines));
-        } catch (Exception ignored) {}
+        replaceLines(area, atLine, atLine, with);
     }
 
     private void tryDirectReplace(JTextArea area, int startLine, int endLine, List<String> with) {
@@ -276,11 +333,10 @@ public class MergeController {
         }
     }
 
-    private void applyWithCustomUndo(JTextArea area, int startOffset, int endOffset, String replacement, boolean onLeft) throws Exception {
+    private void applyWithCustomUndo(JTextArea area, int startOffset, int endOffset, String insertText, boolean onLeft) throws Exception {
         javax.swing.text.Document doc = area.getDocument();
         int len = Math.max(0, endOffset - startOffset);
         String prev = len > 0 ? doc.getText(startOffset, len) : "";
-        String insertText = replacement.isEmpty() ? "" : replacement + "\n";
 
         suppressUndoCapture = true;
         try {
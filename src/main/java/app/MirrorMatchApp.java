@@ -24,6 +24,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import app.FileContentLoader;
 
@@ -49,6 +51,8 @@ public class MirrorMatchApp extends JFrame {
             new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 242, 217));
     private final Highlighter.HighlightPainter changeRightPainter =
             new DefaultHighlighter.DefaultHighlightPainter(new Color(220, 236, 255));
+    private final Highlighter.HighlightPainter movePainter =
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(224, 242, 241));
     private final ThemeManager themeManager = new ThemeManager();
 
     private final JLabel status = new JLabel("Ready.");
@@ -56,6 +60,10 @@ public class MirrorMatchApp extends JFrame {
     private final JToggleButton diffOnlyToggle = new JToggleButton("Diff only");
     private final JToggleButton chunkModeToggle = new JToggleButton("Chunk copy");
     private final JToggleButton ignoreWsToggle = new JToggleButton("Ignore whitespace");
+    private final JToggleButton ignoreTrailingWsToggle = new JToggleButton("Ignore trailing WS");
+    private final JToggleButton ignoreCaseToggle = new JToggleButton("Ignore case");
+    private final JToggleButton ignoreBlankToggle = new JToggleButton("Ignore blank lines");
+    private final JToggleButton ignoreEolToggle = new JToggleButton("Ignore CR/LF");
     private final JToggleButton autoSaveToggle = new JToggleButton("Auto-save");
     private final JToggleButton insertModeToggle = new JToggleButton("Insert mode", true);
     private final AppActions appActions;
@@ -100,7 +108,7 @@ public class MirrorMatchApp extends JFrame {
                 right,
                 session,
                 centerGutter,
-                ignoreWsToggle::isSelected,
+                this::compareFlags,
                 insertModeToggle::isSelected,
                 this::setStatus,
                 this::refreshDiffOnlyView,
@@ -111,7 +119,8 @@ public class MirrorMatchApp extends JFrame {
                 deletePainter,
                 insertPainter,
                 changeLeftPainter,
-                changeRightPainter
+                changeRightPainter,
+                movePainter
         );
         mergeController = new MergeController(
                 left,
@@ -168,6 +177,10 @@ public class MirrorMatchApp extends JFrame {
         tools.add(diffOnlyToggle);
         tools.add(chunkModeToggle);
         tools.add(ignoreWsToggle);
+        tools.add(ignoreTrailingWsToggle);
+        tools.add(ignoreCaseToggle);
+        tools.add(ignoreBlankToggle);
+        tools.add(ignoreEolToggle);
         tools.addSeparator();
         insertModeToggle.setToolTipText("Insert mode: missing lines become insert/delete; off = rewrite changes");
         tools.add(insertModeToggle);
@@ -201,6 +214,7 @@ public class MirrorMatchApp extends JFrame {
                 this::toggleDiffOnlyView,
                 this::recompute
         );
+        appActions.wireCompareToggles(ignoreTrailingWsToggle, ignoreCaseToggle, ignoreBlankToggle, ignoreEolToggle);
 
         centerGutter.setHandler(new CenterDiffGutter.ArrowHandler() {
             @Override public void onCopyLeftToRight(int lineIndex, boolean bulk) {
@@ -372,6 +386,21 @@ public class MirrorMatchApp extends JFrame {
         JMenu view = new JMenu("View");
         JMenuItem recomputeItem = new JMenuItem("Recompute Diff");
         view.add(recomputeItem);
+
+        JMenu algorithm = new JMenu("Diff Algorithm");
+        ButtonGroup algorithmGroup = new ButtonGroup();
+        Map<Strategy, JRadioButtonMenuItem> algorithmItems = new EnumMap<>(Strategy.class);
+        for (Strategy s : Strategy.values()) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(strategyLabel(s), s == diffController.strategy());
+            algorithmGroup.add(item);
+            algorithm.add(item);
+            algorithmItems.put(s, item);
+        }
+        view.add(algorithm);
+        appActions.wireAlgorithmMenu(algorithmItems);
+        JCheckBoxMenuItem detectMovesItem = new JCheckBoxMenuItem("Detect Moved Blocks", diffController.detectMoves());
+        view.add(detectMovesItem);
+        appActions.wireDetectMovesItem(detectMovesItem);
         JMenuItem prefsItem = new JMenuItem("Preferences…");
         view.addSeparator();
         view.add(prefsItem);
@@ -395,23 +424,79 @@ public class MirrorMatchApp extends JFrame {
         return mb;
     }
 
+    private static String strategyLabel(Strategy s) {
+        return switch (s) {
+            case AUTO -> "Auto";
+            case MYERS -> "Myers";
+            case LINEAR_MYERS -> "Myers (linear space)";
+            case HISTOGRAM -> "Histogram";
+            case PATIENCE -> "Patience";
+        };
+    }
+
     void openInto(JTextArea area, boolean left) {
         JFileChooser fc = new JFileChooser();
         if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             Path p = fc.getSelectedFile().toPath();
-            try {
-                FileContentLoader.LoadedContent payload = FileContentLoader.load(p);
-                area.setText(payload.text());
-                mergeController.resetUndoHistory(java.util.EnumSet.of(left ? EditorSide.LEFT : EditorSide.RIGHT));
+            loadInBackground(List.of(p), loaded -> {
+                FileContentLoader.LoadedContent payload = loaded.get(0);
                 EditorPane pane = left ? this.left : this.right;
+                show(pane, payload);
+                mergeController.resetUndoHistory(java.util.EnumSet.of(left ? EditorSide.LEFT : EditorSide.RIGHT));
                 pane.setPath(p);
                 pane.setLastSaved(payload.text());
                 setStatus("Opened " + (left ? "LEFT" : "RIGHT") + ": " + p);
                 refreshHeaders();
                 recompute();
-            } catch (IOException ex) {
-                error("Failed to read: " + p + " – " + ex.getMessage());
+            });
+        }
+    }
+
+    /**
+     * Loads the files on a worker thread, since reading or mapping a big one takes a
+     * while, and hands their contents to then on the EDT. If one fails, those already
+     * opened paged are closed and the failure is reported instead.
+     */
+    void loadInBackground(List<Path> paths, Consumer<List<FileContentLoader.LoadedContent>> then) {
+        setStatus("Loading…");
+        new SwingWorker<List<FileContentLoader.LoadedContent>, Void>() {
+            @Override protected List<FileContentLoader.LoadedContent> doInBackground() throws IOException {
+                List<FileContentLoader.LoadedContent> loaded = new ArrayList<>();
+                for (Path p : paths) {
+                    try {
+                        loaded.add(FileContentLoader.load(p));
+                    } catch (IOException ex) {
+                        for (FileContentLoader.LoadedContent c : loaded) {
+                            if (c.paged() != null) c.paged().close();
+                        }
+                        throw new IOException(p + " – " + ex.getMessage(), ex);
+                    }
+                }
+                return loaded;
+            }
+
+            @Override protected void done() {
+                List<FileContentLoader.LoadedContent> loaded;
+                try {
+                    loaded = get();
+                } catch (ExecutionException ex) {
+                    error("Failed to read: " + ex.getCause().getMessage());
+                    return;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                then.accept(loaded);
             }
+        }.execute();
+    }
+
+    /** Puts loaded content into pane, as its paged document when the file was opened paged. */
+    private static void show(EditorPane pane, FileContentLoader.LoadedContent payload) {
+        if (payload.paged() != null) {
+            pane.setDocument(payload.paged());
+        } else {
+            pane.setText(payload.text());
         }
     }
 
@@ -425,8 +510,7 @@ public class MirrorMatchApp extends JFrame {
                 target = fc.getSelectedFile().toPath();
                 pane.setPath(target);
             }
-            Files.writeString(target, area.getText());
-            pane.setLastSaved(area.getText());
+            pane.save(target);
             refreshHeaders();
             setStatus("Saved " + (left ? "LEFT" : "RIGHT") + " → " + target);
         } catch (IOException ex) {
@@ -438,9 +522,25 @@ public class MirrorMatchApp extends JFrame {
         diffController.recompute();
     }
 
+    /** {@link LineCompare} flags from the comparison toggles. */
+    private int compareFlags() {
+        int flags = 0;
+        if (ignoreWsToggle.isSelected()) flags = flags | LineCompare.IGNORE_WHITESPACE;
+        if (ignoreTrailingWsToggle.isSelected()) flags = flags | LineCompare.IGNORE_TRAILING_WHITESPACE;
+        if (ignoreCaseToggle.isSelected()) flags = flags | LineCompare.IGNORE_CASE;
+        if (ignoreBlankToggle.isSelected()) flags = flags | LineCompare.IGNORE_BLANK_LINES;
+        if (ignoreEolToggle.isSelected()) flags = flags | LineCompare.IGNORE_LINE_ENDINGS;
+        return flags;
+    }
+
     private void toggleDiffOnlyView() {
         boolean on = diffOnlyToggle.isSelected();
         if (on) {
+            if (!collapsedModeController.canCollapse()) {
+                setStatus("Diff only is not available for files opened in large file mode.");
+                diffOnlyToggle.setSelected(false);
+                return;
+            }
             boolean entered = collapsedModeController.enter();
             if (!entered) {
                 setStatus("No differences to collapse.");
@@ -511,17 +611,17 @@ public class MirrorMatchApp extends JFrame {
     private void addEditorListeners() {
         DocumentListener dl = new DocumentListener() {
             @Override public void insertUpdate(DocumentEvent e) {
-                if (!diffController.isSuppressDocEvents()) diffController.delayedRecompute();
+                diffController.documentChanged(e);
             }
             @Override public void removeUpdate(DocumentEvent e) {
-                if (!diffController.isSuppressDocEvents()) diffController.delayedRecompute();
+                diffController.documentChanged(e);
             }
             @Override public void changedUpdate(DocumentEvent e) {
                 if (!diffController.isSuppressDocEvents()) diffController.delayedRecompute();
             }
         };
-        left.area().getDocument().addDocumentListener(dl);
-        right.area().getDocument().addDocumentListener(dl);
+        left.addDocumentListener(dl);
+        right.addDocumentListener(dl);
 
         left.area().getDocument().addUndoableEditListener(left.undoManager());
         right.area().getDocument().addUndoableEditListener(right.undoManager());
@@ -562,7 +662,10 @@ public class MirrorMatchApp extends JFrame {
     }
 
     private void addGutterRepaintOnScroll(JScrollPane leftScroll, JScrollPane rightScroll) {
-        AdjustmentListener repaint = e -> centerGutter.repaint();
+        AdjustmentListener repaint = e -> {
+            centerGutter.repaint();
+            diffController.viewportChanged();
+        };
         leftScroll.getVerticalScrollBar().addAdjustmentListener(repaint);
         rightScroll.getVerticalScrollBar().addAdjustmentListener(repaint);
     }
@@ -570,13 +673,11 @@ public class MirrorMatchApp extends JFrame {
     private void autoSaveIfNeeded() {
         if (!autoSaveToggle.isSelected()) return;
         try {
-            if (left.path() != null && !left.area().getText().equals(left.lastSaved())) {
-                Files.writeString(left.path(), left.area().getText());
-                left.setLastSaved(left.area().getText());
+            if (left.path() != null && left.isModified()) {
+                left.save(left.path());
             }
-            if (right.path() != null && !right.area().getText().equals(right.lastSaved())) {
-                Files.writeString(right.path(), right.area().getText());
-                right.setLastSaved(right.area().getText());
+            if (right.path() != null && right.isModified()) {
+                right.save(right.path());
             }
         } catch (IOException ex) {
             setStatus("Auto-save failed: " + ex.getMessage());
@@ -612,13 +713,13 @@ public class MirrorMatchApp extends JFrame {
     void handleSingleDrop(boolean leftSide, Path p, FileContentLoader.LoadedContent payload) {
         String content = payload.text();
         if (leftSide) {
-            left.area().setText(content);
+            show(left, payload);
             left.setPath(p);
             mergeController.resetUndoHistory(java.util.EnumSet.of(EditorSide.LEFT));
             left.setLastSaved(content);
             refreshHeaders();
         } else {
-            right.area().setText(content);
+            show(right, payload);
             right.setPath(p);
             mergeController.resetUndoHistory(java.util.EnumSet.of(EditorSide.RIGHT));
             right.setLastSaved(content);
@@ -628,8 +729,8 @@ public class MirrorMatchApp extends JFrame {
     }
 
     void handleBothDrop(Path p1, FileContentLoader.LoadedContent t1, Path p2, FileContentLoader.LoadedContent t2) {
-        left.area().setText(t1.text());
-        right.area().setText(t2.text());
+        show(left, t1);
+        show(right, t2);
         left.setPath(p1);
         right.setPath(p2);
         mergeController.resetUndoHistory(java.util.EnumSet.of(EditorSide.LEFT, EditorSide.RIGHT));
@@ -0,0 +1,278 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import app.DiffEngine.Hunk;
+import app.DiffEngine.HunkType;
+
+/**
+ * Post-pass that finds blocks which were moved rather than deleted and re-inserted.
+ * Every window of {@link #MIN_LINES} lines inside a DELETE row is indexed by a rolling
+ * hash of its line hashes; the windows of the INSERT rows are rolled the same way and
+ * looked up, so one pass over the changed lines suffices. A hit is verified line by
+ * line and extended while both sides stay inside unmatched DELETE / INSERT lines.
+ * Each match becomes two MOVE rows, one where the block was (left range only) and one
+ * where it went (right range only), linked by a MOVE hunk in
+ * {@link DiffEngine.Result#moves} whose left range is the source and right range the
+ * destination. MOVE rows already in the input are turned back into DELETE / INSERT
+ * first, so a result spliced by {@link DiffEngine#rediffWindow} can be run again.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class MoveDetector {
+
+    /** Shortest block reported as a move; also the width of the hashed windows. */
+    static final int MIN_LINES = 3;
+
+    /** Windows indexed at most; DELETE lines past this many windows are not move sources. */
+    private static final int MAX_WINDOWS = 1 << 21;
+
+    private static final long BASE = 0x100000001b3L;
+
+    private MoveDetector() {}
+
+    public static DiffEngine.Result detect(DiffEngine.Result base, LineIndex left, LineIndex right) {
+        HunkTable t = demote(base.table);
+        int n = t.size();
+
+        BitSet deleted = new BitSet(left.lineCount());
+        BitSet rowStarts = new BitSet(left.lineCount());
+        long windows = 0;
+        int row = 0;
+        while (row < n) {
+            if (t.type(row) == HunkType.DELETE) {
+                deleted.set(t.leftStart(row), t.leftEnd(row));
+                rowStarts.set(t.leftStart(row));
+                windows = windows + Math.max(0, t.leftEnd(row) - t.leftStart(row) - MIN_LINES + 1);
+            }
+            row = row + 1;
+        }
+        if (windows == 0) {
+            return t == base.table ? base : new DiffEngine.Result(t, base.approximate, LinePairs.of(t, left, right));
+        }
+
+        WindowIndex index = new WindowIndex((int) Math.min(windows, MAX_WINDOWS));
+        row = 0;
+        while (row < n) {
+            if (t.type(row) == HunkType.DELETE) {
+                indexRow(left, t.leftStart(row), t.leftEnd(row), index);
+            }
+            row = row + 1;
+        }
+
+        BitSet used = new BitSet(left.lineCount());
+        List<Hunk> moves = new ArrayList<>();
+        row = 0;
+        while (row < n) {
+            if (t.type(row) == HunkType.INSERT) {
+                matchRow(left, right, t.rightStart(row), t.rightEnd(row), deleted, rowStarts, used, index, moves);
+            }
+            row = row + 1;
+        }
+        if (moves.isEmpty()) {
+            return t == base.table ? base : new DiffEngine.Result(t, base.approximate, LinePairs.of(t, left, right));
+        }
+        HunkTable out = split(t, moves);
+        return new DiffEngine.Result(out, base.approximate, LinePairs.of(out, left, right), moves);
+    }
+
+    /** MOVE rows back to DELETE (left range) or INSERT (right range); the table itself if it has none. */
+    private static HunkTable demote(HunkTable t) {
+        int n = t.size();
+        int row = 0;
+        while (row < n && t.type(row) != HunkType.MOVE) {
+            row = row + 1;
+        }
+        if (row == n) return t;
+        HunkTable.Builder b = new HunkTable.Builder(n);
+        row = 0;
+        while (row < n) {
+            HunkType type = t.type(row);
+            if (type == HunkType.MOVE) {
+                type = t.leftEnd(row) > t.leftStart(row) ? HunkType.DELETE : HunkType.INSERT;
+            }
+            b.add(type, t.leftStart(row), t.leftEnd(row), t.rightStart(row), t.rightEnd(row));
+            row = row + 1;
+        }
+        return b.build();
+    }
+
+    private static void indexRow(LineIndex lines, int from, int to, WindowIndex index) {
+        if (to - from < MIN_LINES) return;
+        long pow = power();
+        long h = windowHash(lines, from);
+        int at = from;
+        while (!index.isFull()) {
+            index.putIfAbsent(h, at);
+            if (at + MIN_LINES >= to) break;
+            h = h * BASE - lines.hash64(at) * pow + lines.hash64(at + MIN_LINES);
+            at = at + 1;
+        }
+    }
+
+    private static void matchRow(LineIndex left, LineIndex right, int from, int to,
+                                 BitSet deleted, BitSet rowStarts, BitSet used, WindowIndex index,
+                                 List<Hunk> moves) {
+        if (to - from < MIN_LINES) return;
+        long pow = power();
+        int at = from;
+        long h = windowHash(right, at);
+        while (true) {
+            int src = index.get(h);
+            int len = src < 0 ? 0 : extend(left, src, right, at, to, deleted, rowStarts, used);
+            if (len >= MIN_LINES && hasContent(right, at, at + len)) {
+                moves.add(new Hunk(HunkType.MOVE, src, src + len, at, at + len));
+                used.set(src, src + len);
+                at = at + len;
+                if (at + MIN_LINES > to) break;
+                h = windowHash(right, at);
+            } else {
+                if (at + MIN_LINES >= to) break;
+                h = h * BASE - right.hash64(at) * pow + right.hash64(at + MIN_LINES);
+                at = at + 1;
+            }
+        }
+    }
+
+    /**
+     * Equal lines from (src, dst) on, staying before rightEnd and inside the unmatched
+     * lines of the DELETE row holding src.
+     */
+    private static int extend(LineIndex left, int src, LineIndex right, int dst, int rightEnd,
+                              BitSet deleted, BitSet rowStarts, BitSet used) {
+        int len = 0;
+        while (dst + len < rightEnd && deleted.get(src + len) && !used.get(src + len)
+                && (len == 0 || !rowStarts.get(src + len))
+                && left.sameLine(src + len, right, dst + len)) {
+            len = len + 1;
+        }
+        return len;
+    }
+
+    /** True unless every line of [from, to) is blank; runs of empty lines are not moves. */
+    private static boolean hasContent(LineIndex lines, int from, int to) {
+        CharSequence text = lines.text();
+        int line = from;
+        while (line < to) {
+            if (!LineCompare.isBlank(text, lines.start(line), lines.end(line))) return true;
+            line = line + 1;
+        }
+        return false;
+    }
+
+    private static long windowHash(LineIndex lines, int from) {
+        long h = 0;
+        int i = 0;
+        while (i < MIN_LINES) {
+            h = h * BASE + lines.hash64(from + i);
+            i = i + 1;
+        }
+        return h;
+    }
+
+    private static long power() {
+        long p = 1;
+        int i = 0;
+        while (i < MIN_LINES) {
+            p = p * BASE;
+            i = i + 1;
+        }
+        return p;
+    }
+
+    /** Cuts the moved ranges out of their DELETE and INSERT rows as MOVE rows. */
+    private static HunkTable split(HunkTable t, List<Hunk> moves) {
+        int m = moves.size();
+        // moves come out in right order; sources need left order
+        long[] bySource = new long[m];
+        int i = 0;
+        while (i < m) {
+            bySource[i] = ((long) moves.get(i).leftStart() << 32) | i;
+            i = i + 1;
+        }
+        java.util.Arrays.sort(bySource);
+
+        HunkTable.Builder b = new HunkTable.Builder(t.size() + 2 * m);
+        int nextSource = 0;
+        int nextDest = 0;
+        int n = t.size();
+        int row = 0;
+        while (row < n) {
+            HunkType type = t.type(row);
+            int ls = t.leftStart(row);
+            int le = t.leftEnd(row);
+            int rs = t.rightStart(row);
+            int re = t.rightEnd(row);
+            if (type == HunkType.DELETE) {
+                int at = ls;
+                while (nextSource < m && (int) (bySource[nextSource] >>> 32) < le) {
+                    Hunk mv = moves.get((int) bySource[nextSource]);
+                    b.add(HunkType.DELETE, at, mv.leftStart(), rs, rs);
+                    b.add(HunkType.MOVE, mv.leftStart(), mv.leftEnd(), rs, rs);
+                    at = mv.leftEnd();
+                    nextSource = nextSource + 1;
+                }
+                b.add(HunkType.DELETE, at, le, rs, rs);
+            } else if (type == HunkType.INSERT) {
+                int at = rs;
+                while (nextDest < m && moves.get(nextDest).rightStart() < re) {
+                    Hunk mv = moves.get(nextDest);
+                    b.add(HunkType.INSERT, ls, ls, at, mv.rightStart());
+                    b.add(HunkType.MOVE, ls, ls, mv.rightStart(), mv.rightEnd());
+                    at = mv.rightEnd();
+                    nextDest = nextDest + 1;
+                }
+                b.add(HunkType.INSERT, ls, ls, at, re);
+            } else {
+                b.add(type, ls, le, rs, re);
+            }
+            row = row + 1;
+        }
+        return b.build();
+    }
+
+    /** Open-addressing map from window hash to the first left line with that hash. */
+    private static final class WindowIndex {
+        private final long[] keys;
+        private final int[] lines;   // line + 1; 0 marks an empty slot
+        private final int mask;
+        private final int limit;
+        private int size;
+
+        WindowIndex(int expected) {
+            int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[cap];
+            lines = new int[cap];
+            mask = cap - 1;
+            limit = expected;
+        }
+
+        boolean isFull() { return size >= limit; }
+
+        void putIfAbsent(long key, int line) {
+            int slot = slot(key);
+            while (lines[slot] != 0) {
+                if (keys[slot] == key) return;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            lines[slot] = line + 1;
+            size = size + 1;
+        }
+
+        int get(long key) {
+            int slot = slot(key);
+            while (lines[slot] != 0) {
+                if (keys[slot] == key) return lines[slot] - 1;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+}
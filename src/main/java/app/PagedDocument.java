@@ -0,0 +1,730 @@
+package app;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document over a {@link PagedText}, for files too large to copy into a PlainDocument.
+ * The content is a piece table: the file stays mapped and only inserted text is held
+ * on the heap. Lines are not stored either; the root element answers line queries from
+ * the newline counts of the pieces and pages and hands out short-lived line elements,
+ * so JTextArea, its views and the gutters, which all walk getDefaultRootElement(), see
+ * the same line structure as with a PlainDocument. Like PlainDocument, the content ends
+ * with an implicit '\n'.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class PagedDocument extends AbstractDocument implements Closeable {
+
+    private final Pieces pieces;
+    private final LineRoot root = new LineRoot();
+    private int savedVersion;
+
+    PagedDocument(PagedText text) {
+        super(new Pieces(text));
+        this.pieces = (Pieces) getContent();
+        putProperty(PlainDocument.tabSizeAttribute, 8);
+    }
+
+    /** Opens a UTF-8 file as a paged document; only the page counts are read up front. */
+    public static PagedDocument open(Path path) throws IOException {
+        return new PagedDocument(PagedText.open(path));
+    }
+
+    @Override public Element getDefaultRootElement() { return root; }
+
+    @Override public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /** True once the text differs from what was opened or last written. */
+    public boolean isModified() {
+        return pieces.version != savedVersion;
+    }
+
+    /**
+     * The text without the implicit trailing newline, as a view of the current pieces;
+     * later edits do not show through, so a worker thread may read it while the
+     * document is edited.
+     */
+    public CharSequence snapshot() {
+        return takeSnapshot();
+    }
+
+    private Snapshot takeSnapshot() {
+        readLock();
+        try {
+            return pieces.snapshot();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Writes the text to target through a temporary file in the same directory, which
+     * then replaces target. The text is written as UTF-8, which round-trips the original
+     * bytes since only valid UTF-8 files are opened. When target is the file this
+     * document maps, see {@link #replaceMapped}.
+     */
+    public void write(Path target) throws IOException {
+        Snapshot text = takeSnapshot();
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                char[] buf = new char[PagedText.PAGE_BYTES];
+                int n = text.length();
+                int at = 0;
+                while (at < n) {
+                    int len = Math.min(buf.length, n - at);
+                    text.getChars(at, at + len, buf, 0);
+                    out.write(buf, 0, len);
+                    at = at + len;
+                }
+            }
+            if (Files.exists(target) && Files.isSameFile(target, pieces.text.path())) {
+                replaceMapped(tmp, target);
+            } else {
+                replace(tmp, target);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        savedVersion = pieces.version;
+    }
+
+    /**
+     * Replaces the file this document maps with tmp, which holds the document's text.
+     * The mapping is released first, as Windows refuses to replace a mapped file, and
+     * the new file is mapped in its place as the whole content. Earlier edits refer to
+     * the old file, so undo stops here. If the replace fails, the old file is still
+     * there unchanged and is mapped again as it was.
+     */
+    private void replaceMapped(Path tmp, Path target) throws IOException {
+        PagedText old = pieces.text;
+        writeLock();
+        try {
+            old.close();
+            try {
+                replace(tmp, target);
+            } catch (IOException ex) {
+                try {
+                    pieces.text = old.reopen(old.path());
+                } catch (IOException again) {
+                    ex.addSuppressed(again);
+                }
+                throw ex;
+            }
+            PagedText next = old.reopen(target);
+            if (next.length() != pieces.length() - 1) {
+                next.close();
+                throw new IOException("File changed on disk while saving: " + target);
+            }
+            pieces.rebase(next);
+        } finally {
+            writeUnlock();
+        }
+        fireUndoableEditUpdate(new UndoableEditEvent(this, new SavePoint()));
+    }
+
+    private static void replace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Undo barrier after the mapped file was replaced; the edits before it cannot be undone. */
+    private static final class SavePoint extends AbstractUndoableEdit {
+        @Override public boolean canUndo() { return false; }
+        @Override public boolean canRedo() { return false; }
+    }
+
+    @Override public void close() throws IOException {
+        pieces.text.close();
+    }
+
+    @Override protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        int offset = chng.getOffset();
+        int added = pieces.newlinesBefore(offset + chng.getLength()) - pieces.newlinesBefore(offset);
+        if (added > 0) {
+            int line = root.getElementIndex(offset);
+            chng.addEdit(new LineEdit(line, lines(line, 1), lines(line, added + 1)));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    @Override protected void removeUpdate(DefaultDocumentEvent chng) {
+        int offset = chng.getOffset();
+        int removed = pieces.newlinesBefore(offset + chng.getLength()) - pieces.newlinesBefore(offset);
+        if (removed > 0) {
+            int line = root.getElementIndex(offset);
+            chng.addEdit(new LineEdit(line, lines(line, removed + 1), lines(line, 1)));
+        }
+        super.removeUpdate(chng);
+    }
+
+    private Element[] lines(int from, int count) {
+        Element[] out = new Element[count];
+        int i = 0;
+        while (i < count) {
+            out[i] = new Line(from + i);
+            i = i + 1;
+        }
+        return out;
+    }
+
+    /**
+     * Lines replaced under the root by one edit. AbstractDocument.ElementEdit cannot be
+     * used as its undo rewrites a BranchElement; the lines here need no rewriting.
+     */
+    private final class LineEdit extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int index;
+        private Element[] removed;
+        private Element[] added;
+
+        LineEdit(int index, Element[] removed, Element[] added) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        @Override public Element getElement() { return root; }
+        @Override public int getIndex() { return index; }
+        @Override public Element[] getChildrenRemoved() { return removed; }
+        @Override public Element[] getChildrenAdded() { return added; }
+
+        @Override public void undo() throws CannotUndoException {
+            super.undo();
+            swap();
+        }
+
+        @Override public void redo() throws CannotRedoException {
+            super.redo();
+            swap();
+        }
+
+        private void swap() {
+            Element[] tmp = removed;
+            removed = added;
+            added = tmp;
+        }
+    }
+
+    /** Root whose children are the lines, computed on request. */
+    private final class LineRoot implements Element {
+        @Override public javax.swing.text.Document getDocument() { return PagedDocument.this; }
+        @Override public Element getParentElement() { return null; }
+        @Override public String getName() { return ParagraphElementName; }
+        @Override public AttributeSet getAttributes() { return SimpleAttributeSet.EMPTY; }
+        @Override public int getStartOffset() { return 0; }
+        @Override public int getEndOffset() { return pieces.length(); }
+        @Override public int getElementCount() { return pieces.newlines(); }
+        @Override public boolean isLeaf() { return false; }
+
+        @Override public int getElementIndex(int offset) {
+            int last = pieces.newlines() - 1;
+            if (offset <= 0) return 0;
+            if (offset >= pieces.length()) return last;
+            return Math.min(last, pieces.newlinesBefore(offset));
+        }
+
+        @Override public Element getElement(int index) {
+            if (index < 0 || index >= pieces.newlines()) return null;
+            return new Line(index);
+        }
+    }
+
+    /** Line element by index; its offsets are looked up whenever they are asked for. */
+    private final class Line implements Element {
+        private final int index;
+
+        Line(int index) {
+            this.index = index;
+        }
+
+        @Override public javax.swing.text.Document getDocument() { return PagedDocument.this; }
+        @Override public Element getParentElement() { return root; }
+        @Override public String getName() { return ContentElementName; }
+        @Override public AttributeSet getAttributes() { return SimpleAttributeSet.EMPTY; }
+        @Override public int getElementIndex(int offset) { return -1; }
+        @Override public int getElementCount() { return 0; }
+        @Override public Element getElement(int index) { return null; }
+        @Override public boolean isLeaf() { return true; }
+
+        @Override public int getStartOffset() {
+            int i = Math.min(index, pieces.newlines() - 1);
+            return i == 0 ? 0 : pieces.newlineAt(i - 1) + 1;
+        }
+
+        @Override public int getEndOffset() {
+            int i = Math.min(index, pieces.newlines() - 1);
+            return pieces.newlineAt(i) + 1;
+        }
+    }
+
+    /** A run of the original text (added == false) or of the insert buffer. */
+    private record Piece(boolean added, int start, int length, int newlines) {}
+
+    /** Position that follows the edits of the content. */
+    private static final class Mark implements Position {
+        int offset;
+
+        Mark(int offset) {
+            this.offset = offset;
+        }
+
+        @Override public int getOffset() { return offset; }
+    }
+
+    /** Piece table over the paged file plus an append-only buffer of inserted text. */
+    private static final class Pieces implements AbstractDocument.Content {
+        private PagedText text;
+        private final StringBuilder inserted = new StringBuilder("\n");
+        private final List<Piece> list = new ArrayList<>();
+        /** charStarts[i] / lineStarts[i]: chars and newlines before piece i; index size() holds the totals. */
+        private int[] charStarts;
+        private int[] lineStarts;
+        private final List<WeakReference<Mark>> marks = new ArrayList<>();
+        private int purgeAt = 64;
+        int version;
+
+        Pieces(PagedText text) {
+            this.text = text;
+            if (text.length() > 0) {
+                list.add(new Piece(false, 0, text.length(), text.newlineCount()));
+            }
+            list.add(new Piece(true, 0, 1, 1));
+            reindex();
+        }
+
+        @Override public int length() { return charStarts[list.size()]; }
+        int newlines() { return lineStarts[list.size()]; }
+
+        /** Makes next, which holds exactly the current text, the whole content. */
+        void rebase(PagedText next) {
+            text = next;
+            list.clear();
+            inserted.setLength(1);
+            if (next.length() > 0) {
+                list.add(new Piece(false, 0, next.length(), next.newlineCount()));
+            }
+            list.add(new Piece(true, 0, 1, 1));
+            reindex();
+        }
+
+        @Override public Position createPosition(int offset) throws BadLocationException {
+            if (offset < 0 || offset > length()) throw new BadLocationException("Invalid position", offset);
+            Mark m = new Mark(offset);
+            if (marks.size() >= purgeAt) {
+                marks.removeIf(r -> r.get() == null);
+                purgeAt = Math.max(64, 2 * marks.size());
+            }
+            marks.add(new WeakReference<>(m));
+            return m;
+        }
+
+        @Override public UndoableEdit insertString(int where, String str) throws BadLocationException {
+            if (where < 0 || where >= length()) throw new BadLocationException("Invalid insert", where);
+            Piece p = new Piece(true, inserted.length(), str.length(), count(str, 0, str.length()));
+            inserted.append(str);
+            List<Piece> one = new ArrayList<>(1);
+            one.add(p);
+            insert(where, one);
+            return new PieceEdit(true, where, one);
+        }
+
+        @Override public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+            if (where < 0 || nitems < 0 || where + nitems >= length()) {
+                throw new BadLocationException("Invalid remove", where + nitems);
+            }
+            return new PieceEdit(false, where, cut(where, nitems));
+        }
+
+        @Override public String getString(int where, int len) throws BadLocationException {
+            check(where, len);
+            char[] out = new char[len];
+            fill(where, where + len, out, 0);
+            return new String(out);
+        }
+
+        @Override public void getChars(int where, int len, Segment txt) throws BadLocationException {
+            check(where, len);
+            int i = pieceAt(where);
+            Piece p = list.get(i);
+            if (!p.added() && len > 0 && where + len <= charStarts[i + 1]) {
+                // inside one page of the file: hand out the cached page without copying
+                int from = p.start() + where - charStarts[i];
+                int page = text.pageOf(from);
+                if (from + len <= text.pageStart(page + 1)) {
+                    txt.array = text.page(page).chars;
+                    txt.offset = from - text.pageStart(page);
+                    txt.count = len;
+                    return;
+                }
+            }
+            txt.array = new char[len];
+            txt.offset = 0;
+            txt.count = len;
+            fill(where, where + len, txt.array, 0);
+        }
+
+        int newlinesBefore(int offset) {
+            if (offset >= length()) return newlines();
+            int i = pieceAt(offset);
+            Piece p = list.get(i);
+            return lineStarts[i] + newlinesIn(p, p.start(), p.start() + offset - charStarts[i]);
+        }
+
+        int newlineAt(int k) {
+            int lo = 0;
+            int hi = list.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lineStarts[mid + 1] > k) hi = mid; else lo = mid + 1;
+            }
+            Piece p = list.get(lo);
+            int j = k - lineStarts[lo];
+            int at;
+            if (p.added()) {
+                at = p.start();
+                while (true) {
+                    if (inserted.charAt(at) == '\n') {
+                        if (j == 0) break;
+                        j = j - 1;
+                    }
+                    at = at + 1;
+                }
+            } else {
+                at = text.newlineAt(text.newlinesBefore(p.start()) + j);
+            }
+            return charStarts[lo] + at - p.start();
+        }
+
+        Snapshot snapshot() {
+            int n = list.size();
+            int[] starts = new int[n];
+            boolean[] added = new boolean[n];
+            int[] offsets = new int[n];
+            int[] lines = new int[n + 1];
+            int i = 0;
+            while (i < n) {
+                Piece p = list.get(i);
+                starts[i] = charStarts[i];
+                added[i] = p.added();
+                offsets[i] = p.start();
+                lines[i] = lineStarts[i];
+                i = i + 1;
+            }
+            lines[n] = lineStarts[n];
+            char[] buffer = new char[inserted.length()];
+            inserted.getChars(0, buffer.length, buffer, 0);
+            return new Snapshot(text, buffer, starts, added, offsets, lines, length() - 1);
+        }
+
+        private void check(int where, int len) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length()) {
+                throw new BadLocationException("Invalid range", where + len);
+            }
+        }
+
+        private void fill(int from, int to, char[] dst, int at) {
+            int i = pieceAt(from);
+            while (from < to) {
+                Piece p = list.get(i);
+                int local = p.start() + from - charStarts[i];
+                int n = Math.min(to, charStarts[i + 1]) - from;
+                if (p.added()) {
+                    inserted.getChars(local, local + n, dst, at);
+                } else {
+                    text.getChars(local, local + n, dst, at);
+                }
+                from = from + n;
+                at = at + n;
+                i = i + 1;
+            }
+        }
+
+        private void insert(int where, List<Piece> add) {
+            int len = 0;
+            int k = 0;
+            while (k < add.size()) {
+                len = len + add.get(k).length();
+                k = k + 1;
+            }
+            int i = split(where);
+            Piece before = i > 0 ? list.get(i - 1) : null;
+            Piece single = add.size() == 1 ? add.get(0) : null;
+            if (before != null && single != null && before.added() && single.added()
+                    && before.start() + before.length() == single.start()) {
+                // typing: grow the piece that was inserted just before
+                list.set(i - 1, new Piece(true, before.start(), before.length() + single.length(),
+                        before.newlines() + single.newlines()));
+            } else {
+                list.addAll(i, add);
+            }
+            reindex();
+            moveMarks(where, len, true);
+            version = version + 1;
+        }
+
+        private List<Piece> cut(int where, int len) {
+            int i = split(where);
+            int j = split(where + len);
+            List<Piece> sub = list.subList(i, j);
+            List<Piece> removed = new ArrayList<>(sub);
+            sub.clear();
+            reindex();
+            moveMarks(where, len, false);
+            version = version + 1;
+            return removed;
+        }
+
+        /** Makes offset a piece boundary; returns the index of the piece starting there. */
+        private int split(int offset) {
+            if (offset >= length()) return list.size();
+            int i = pieceAt(offset);
+            int d = offset - charStarts[i];
+            if (d == 0) return i;
+            Piece p = list.get(i);
+            int leftLines = newlinesIn(p, p.start(), p.start() + d);
+            list.set(i, new Piece(p.added(), p.start(), d, leftLines));
+            list.add(i + 1, new Piece(p.added(), p.start() + d, p.length() - d, p.newlines() - leftLines));
+            reindex();
+            return i + 1;
+        }
+
+        private int pieceAt(int offset) {
+            int lo = 0;
+            int hi = list.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (charStarts[mid] <= offset) lo = mid; else hi = mid - 1;
+            }
+            return lo;
+        }
+
+        private int newlinesIn(Piece p, int from, int to) {
+            if (p.added()) return count(inserted, from, to);
+            return text.newlinesBefore(to) - text.newlinesBefore(from);
+        }
+
+        private static int count(CharSequence s, int from, int to) {
+            int n = 0;
+            while (from < to) {
+                if (s.charAt(from) == '\n') n = n + 1;
+                from = from + 1;
+            }
+            return n;
+        }
+
+        private void reindex() {
+            int n = list.size();
+            if (charStarts == null || charStarts.length < n + 1) {
+                charStarts = new int[n + 16];
+                lineStarts = new int[n + 16];
+            }
+            int i = 0;
+            while (i < n) {
+                Piece p = list.get(i);
+                charStarts[i + 1] = charStarts[i] + p.length();
+                lineStarts[i + 1] = lineStarts[i] + p.newlines();
+                i = i + 1;
+            }
+        }
+
+        /**
+         * Shifts marks as GapContent does: an insert pushes the marks at its offset along,
+         * except at offset 0; a remove collapses the marks inside it onto its start.
+         */
+        private void moveMarks(int where, int len, boolean insert) {
+            int i = 0;
+            int n = marks.size();
+            while (i < n) {
+                Mark m = marks.get(i).get();
+                if (m != null) {
+                    if (insert) {
+                        if (m.offset > where || (m.offset == where && where > 0)) m.offset = m.offset + len;
+                    } else if (m.offset > where + len) {
+                        m.offset = m.offset - len;
+                    } else if (m.offset > where) {
+                        m.offset = where;
+                    }
+                }
+                i = i + 1;
+            }
+        }
+
+        /** Undo of one insert or remove, carrying the pieces rather than their text. */
+        private final class PieceEdit extends AbstractUndoableEdit {
+            private final boolean insert;
+            private final int where;
+            private List<Piece> removedOrAdded;
+            private final int len;
+
+            PieceEdit(boolean insert, int where, List<Piece> pieces) {
+                this.insert = insert;
+                this.where = where;
+                this.removedOrAdded = pieces;
+                int l = 0;
+                int i = 0;
+                while (i < pieces.size()) {
+                    l = l + pieces.get(i).length();
+                    i = i + 1;
+                }
+                this.len = l;
+            }
+
+            @Override public void undo() throws CannotUndoException {
+                super.undo();
+                if (insert) removedOrAdded = cut(where, len); else insert(where, removedOrAdded);
+            }
+
+            @Override public void redo() throws CannotRedoException {
+                super.redo();
+                if (insert) insert(where, removedOrAdded); else removedOrAdded = cut(where, len);
+            }
+        }
+    }
+
+    /**
+     * Read-only view of the text at one moment; keeps the page it last read. It finds
+     * its newlines from the newline counts of its pieces and pages, so a
+     * {@link LineIndex} over it reads only the pages of the lines it is asked for.
+     */
+    private static final class Snapshot implements CharSequence, LineIndex.Newlines {
+        private final PagedText text;
+        private final char[] inserted;
+        private final int[] starts;
+        private final boolean[] added;
+        private final int[] offsets;
+        /** Newlines before each piece; the last entry counts the implicit final '\n' too. */
+        private final int[] lines;
+        private final int length;
+
+        private char[] run;
+        private int runStart;
+        private int runEnd;
+        private int runOffset;
+
+        Snapshot(PagedText text, char[] inserted, int[] starts, boolean[] added, int[] offsets, int[] lines,
+                 int length) {
+            this.text = text;
+            this.inserted = inserted;
+            this.starts = starts;
+            this.added = added;
+            this.offsets = offsets;
+            this.lines = lines;
+            this.length = length;
+        }
+
+        @Override public int length() { return length; }
+
+        @Override public int newlineCount() { return lines[lines.length - 1] - 1; }
+
+        @Override public int newlineAt(int k) {
+            int lo = 0;
+            int hi = starts.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lines[mid + 1] > k) hi = mid; else lo = mid + 1;
+            }
+            int j = k - lines[lo];
+            int at;
+            if (added[lo]) {
+                at = offsets[lo];
+                while (true) {
+                    if (inserted[at] == '\n') {
+                        if (j == 0) break;
+                        j = j - 1;
+                    }
+                    at = at + 1;
+                }
+            } else {
+                at = text.newlineAt(text.newlinesBefore(offsets[lo]) + j);
+            }
+            return starts[lo] + at - offsets[lo];
+        }
+
+        @Override public char charAt(int index) {
+            if (index < runStart || index >= runEnd) {
+                if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+                seek(index);
+            }
+            return run[index - runStart + runOffset];
+        }
+
+        @Override public CharSequence subSequence(int start, int end) {
+            char[] out = new char[end - start];
+            getChars(start, end, out, 0);
+            return new String(out);
+        }
+
+        @Override public String toString() {
+            return subSequence(0, length).toString();
+        }
+
+        void getChars(int start, int end, char[] dst, int at) {
+            while (start < end) {
+                if (start < runStart || start >= runEnd) seek(start);
+                int n = Math.min(end, runEnd) - start;
+                System.arraycopy(run, start - runStart + runOffset, dst, at, n);
+                start = start + n;
+                at = at + n;
+            }
+        }
+
+        /** Points the run at the stretch of one piece and one page holding index. */
+        private void seek(int index) {
+            int lo = 0;
+            int hi = starts.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= index) lo = mid; else hi = mid - 1;
+            }
+            int pieceEnd = lo + 1 < starts.length ? starts[lo + 1] : length + 1;
+            int local = offsets[lo] + index - starts[lo];
+            if (added[lo]) {
+                run = inserted;
+                runStart = starts[lo];
+                runEnd = pieceEnd;
+                runOffset = offsets[lo];
+                return;
+            }
+            int page = text.pageOf(local);
+            int pageStart = text.pageStart(page);
+            int pageEnd = text.pageStart(page + 1);
+            int pieceFileStart = offsets[lo];
+            int pieceFileEnd = offsets[lo] + pieceEnd - starts[lo];
+            int runFrom = Math.max(pageStart, pieceFileStart);
+            int runTo = Math.min(pageEnd, pieceFileEnd);
+            run = text.page(page).chars;
+            runStart = starts[lo] + runFrom - pieceFileStart;
+            runEnd = runStart + runTo - runFrom;
+            runOffset = runFrom - pageStart;
+        }
+    }
+}
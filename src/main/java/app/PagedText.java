@@ -0,0 +1,368 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A UTF-8 text file mapped read-only and cut into pages of at most {@link #PAGE_BYTES}
+ * bytes, each ending after its last '\n' (or at a char boundary when a line is longer
+ * than a page). Opening counts the newlines of every page in its bytes with
+ * {@link ByteScan} and decodes it once to count its chars, and keeps only those counts;
+ * a page is decoded again when it is read and held in a small LRU cache, so showing the
+ * lines around a viewport touches a few pages whatever the file size. Offsets are in
+ * chars, as in a Document. Malformed input is always an error, never replaced: a file
+ * that is not valid UTF-8 is refused when opened, so a page written back never loses
+ * bytes, and a page that no longer decodes because the file changed on disk throws.
+ * Files over {@link #REGION_BYTES} are mapped as several regions; a page crossing two
+ * of them is copied once when decoded. Pages may be read from several threads.
+ * {@link #close} unmaps the file at once rather than when the buffers are collected,
+ * since Windows refuses to replace a file while it is mapped; a page read after that
+ * throws instead of touching the released memory.
+ * No use of ++ or -- operators (per user request).
+ */
+final class PagedText implements Closeable {
+
+    /** Bytes per mapped region (a single mapping is limited to 2 GB). */
+    static final int REGION_BYTES = 1 << 30;
+    /** Largest page, in bytes. */
+    static final int PAGE_BYTES = 64 * 1024;
+    /** Decoded pages kept; 64 pages of 64 KB are at most 8 MB of chars. */
+    static final int CACHE_PAGES = 64;
+
+    /** Decoded chars of one page with the page-relative offsets of its newlines. */
+    static final class Page {
+        final char[] chars;
+        final int[] newlines;
+
+        Page(char[] chars, int[] newlines) {
+            this.chars = chars;
+            this.newlines = newlines;
+        }
+    }
+
+    /** Unsafe.invokeCleaner bound to the Unsafe instance, or null where it is not available. */
+    private static final MethodHandle UNMAPPER = unmapper();
+
+    private final Path path;
+    private final FileChannel channel;
+    /** The mapping; null once closed. Guarded by this after construction. */
+    private MappedByteBuffer[] regions;
+    private final int regionBytes;
+    private final int pageSize;
+    private final int pages;
+    /** Per page p: first byte, first char and newlines before it; index pages holds the totals. */
+    private final long[] pageBytes;
+    private final int[] pageChars;
+    private final int[] pageLines;
+    private final Map<Integer, Page> cache = new LinkedHashMap<>(CACHE_PAGES * 2, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > CACHE_PAGES;
+        }
+    };
+
+    private PagedText(Path path, FileChannel channel, int regionBytes, int pageBytes) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.regionBytes = regionBytes;
+        this.pageSize = pageBytes;
+        long size = channel.size();
+        this.regions = map(channel, size, regionBytes);
+
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, size / Math.max(1, pageBytes / 2) + 2);
+        long[] bytes = new long[Math.min(capacity, 1024)];
+        int[] chars = new int[bytes.length];
+        int[] lines = new int[bytes.length];
+        CharsetDecoder decoder = newDecoder();
+        CharBuffer out = CharBuffer.allocate(pageBytes);
+        long totalChars = 0;
+        long totalLines = 0;
+        int p = 0;
+        long at = 0;
+        while (at < size) {
+            if (p + 1 >= bytes.length) {
+                int grown = (int) Math.min(Integer.MAX_VALUE - 8, 2L * bytes.length);
+                bytes = java.util.Arrays.copyOf(bytes, grown);
+                chars = java.util.Arrays.copyOf(chars, grown);
+                lines = java.util.Arrays.copyOf(lines, grown);
+            }
+            long end = pageEnd(at, size, pageBytes);
+            out.clear();
+            decoder.reset();
+            ByteBuffer in = bytes(regions, regionBytes, at, end);
+            // 0x0A is never part of a longer UTF-8 sequence, so the bytes give the newlines
+            int newlines = 0;
+            int lim = in.limit();
+            int i = ByteScan.indexOf(in, in.position(), lim);
+            while (i < lim) {
+                newlines = newlines + 1;
+                i = ByteScan.indexOf(in, i + 1, lim);
+            }
+            CoderResult result = decoder.decode(in, out, true);
+            if (result.isError()) {
+                throw new IOException("Not a UTF-8 text file (bad byte at offset " + (end - in.remaining()) + ")");
+            }
+            decoder.flush(out);
+            int n = out.position();
+            bytes[p] = at;
+            chars[p] = (int) totalChars;
+            lines[p] = (int) totalLines;
+            totalChars = totalChars + n;
+            totalLines = totalLines + newlines;
+            if (totalChars > Integer.MAX_VALUE - 16) {
+                throw new IOException("File too large to page: " + size + " bytes");
+            }
+            p = p + 1;
+            at = end;
+        }
+        bytes[p] = size;
+        chars[p] = (int) totalChars;
+        lines[p] = (int) totalLines;
+        this.pages = p;
+        this.pageBytes = bytes;
+        this.pageChars = chars;
+        this.pageLines = lines;
+    }
+
+    static PagedText open(Path path) throws IOException {
+        return open(path, REGION_BYTES, PAGE_BYTES);
+    }
+
+    static PagedText open(Path path, int regionBytes, int pageBytes) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PagedText(path, ch, regionBytes, pageBytes);
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    /** Opens path with the region and page sizes of this text. */
+    PagedText reopen(Path path) throws IOException {
+        return open(path, regionBytes, pageSize);
+    }
+
+    /** The file this text maps. */
+    Path path() { return path; }
+
+    /** Length in chars. */
+    int length() { return pageChars[pages]; }
+    /** Number of '\n' chars in the text. */
+    int newlineCount() { return pageLines[pages]; }
+    int pageCount() { return pages; }
+    /** First char of page p; pageStart(pageCount()) is the length. */
+    int pageStart(int p) { return pageChars[p]; }
+
+    /** The page holding char offset; the last page for offset == length(). */
+    int pageOf(int offset) {
+        int lo = 0;
+        int hi = pages - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pageChars[mid] <= offset) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** Page p decoded, from the cache when it was read recently. */
+    synchronized Page page(int p) {
+        Page page = cache.get(p);
+        if (page == null) {
+            if (regions == null) throw new UncheckedIOException(new IOException("Closed: " + path));
+            page = decode(p);
+            cache.put(p, page);
+        }
+        return page;
+    }
+
+    char charAt(int offset) {
+        int p = pageOf(offset);
+        return page(p).chars[offset - pageChars[p]];
+    }
+
+    /** Copies chars [from, to) into dst at. */
+    void getChars(int from, int to, char[] dst, int at) {
+        while (from < to) {
+            int p = pageOf(from);
+            int n = Math.min(to, pageChars[p + 1]) - from;
+            System.arraycopy(page(p).chars, from - pageChars[p], dst, at, n);
+            from = from + n;
+            at = at + n;
+        }
+    }
+
+    /** Number of '\n' chars before offset. */
+    int newlinesBefore(int offset) {
+        int p = pageOf(offset);
+        if (offset == pageChars[p]) return pageLines[p];
+        if (offset >= pageChars[p + 1]) return pageLines[p + 1];
+        int[] nl = page(p).newlines;
+        int local = offset - pageChars[p];
+        int lo = 0;
+        int hi = nl.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (nl[mid] < local) lo = mid + 1; else hi = mid;
+        }
+        return pageLines[p] + lo;
+    }
+
+    /** Offset of the k-th '\n' (from 0). */
+    int newlineAt(int k) {
+        int lo = 0;
+        int hi = pages - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (pageLines[mid + 1] > k) hi = mid; else lo = mid + 1;
+        }
+        return pageChars[lo] + page(lo).newlines[k - pageLines[lo]];
+    }
+
+    private Page decode(int p) {
+        ByteBuffer in = bytes(regions, regionBytes, pageBytes[p], pageBytes[p + 1]);
+        CharBuffer out;
+        try {
+            out = newDecoder().decode(in);
+        } catch (CharacterCodingException ex) {
+            throw new UncheckedIOException("File changed on disk (page " + p + " is no longer UTF-8)", ex);
+        }
+        char[] chars = new char[out.remaining()];
+        out.get(chars);
+        if (chars.length != pageChars[p + 1] - pageChars[p]) {
+            throw new UncheckedIOException(new IOException("File changed on disk (page " + p + " has a new length)"));
+        }
+        int[] newlines = new int[pageLines[p + 1] - pageLines[p]];
+        int k = 0;
+        int i = 0;
+        while (k < newlines.length) {
+            if (chars[i] == '\n') {
+                newlines[k] = i;
+                k = k + 1;
+            }
+            i = i + 1;
+        }
+        return new Page(chars, newlines);
+    }
+
+    /** End of the page starting at byte from: after its last '\n', else before a char start. */
+    private long pageEnd(long from, long size, int pageBytes) {
+        long end = from + pageBytes;
+        if (end >= size) return size;
+        long i = end - 1;
+        while (i >= from) {
+            if (byteAt(i) == '\n') return i + 1;
+            i = i - 1;
+        }
+        while (end > from + 1 && (byteAt(end) & 0xc0) == 0x80) {
+            end = end - 1;
+        }
+        return end;
+    }
+
+    private byte byteAt(long pos) {
+        int r = (int) (pos / regionBytes);
+        return regions[r].get((int) (pos - (long) r * regionBytes));
+    }
+
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /** Maps the first size bytes of channel read-only as regions of regionBytes each. */
+    static MappedByteBuffer[] map(FileChannel channel, long size, int regionBytes) throws IOException {
+        int n = (int) ((size + regionBytes - 1) / regionBytes);
+        MappedByteBuffer[] regions = new MappedByteBuffer[n];
+        int r = 0;
+        while (r < n) {
+            long at = (long) r * regionBytes;
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(regionBytes, size - at));
+            r = r + 1;
+        }
+        return regions;
+    }
+
+    /**
+     * The bytes [from, to) as a view of one region, or a copy when they span two or more.
+     * Pages are at most {@link #PAGE_BYTES}, so a copy is always small.
+     */
+    static ByteBuffer bytes(MappedByteBuffer[] regions, int regionBytes, long from, long to) {
+        int r = (int) (from / regionBytes);
+        long base = (long) r * regionBytes;
+        if (to - base <= regions[r].limit()) {
+            return regions[r].duplicate().position((int) (from - base)).limit((int) (to - base));
+        }
+        byte[] copy = new byte[(int) (to - from)];
+        int at = 0;
+        long pos = from;
+        while (pos < to) {
+            int rr = (int) (pos / regionBytes);
+            int off = (int) (pos - (long) rr * regionBytes);
+            int len = (int) Math.min(regions[rr].limit() - off, to - pos);
+            regions[rr].get(off, copy, at, len);
+            at = at + len;
+            pos = pos + len;
+        }
+        return ByteBuffer.wrap(copy);
+    }
+
+    /** Unmaps the file and closes the channel; a second call does nothing. */
+    @Override public void close() throws IOException {
+        synchronized (this) {
+            if (regions == null) return;
+            cache.clear();
+            int r = 0;
+            while (r < regions.length) {
+                unmap(regions[r]);
+                r = r + 1;
+            }
+            regions = null;
+        }
+        channel.close();
+    }
+
+    /**
+     * Releases buf's mapping now instead of when buf is collected. Only for a buffer
+     * from FileChannel.map (not a view of one) that nothing reads any more.
+     */
+    static void unmap(MappedByteBuffer buf) {
+        if (UNMAPPER == null) return;
+        try {
+            UNMAPPER.invokeExact((ByteBuffer) buf);
+        } catch (Throwable ignored) {
+            // left to the garbage collector
+        }
+    }
+
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import app.DiffEngine.HunkType;
+
+/**
+ * Out-of-core line diff of two files, for inputs too large to hold as Strings. Each
+ * file is read through memory-mapped windows of {@link #MAP_CHUNK} bytes and only a
+ * 64-bit hash (mixed with the length) is kept per line, for at most windowLines lines
+ * per side. Equal leading lines are emitted and dropped straight away; at the first
+ * difference both line windows are interned and diffed with the engine under the
+ * budget, and everything up to the last run of {@link #ANCHOR_LINES} equal lines is
+ * emitted before the windows slide past it. A window pair without such an anchor is
+ * cut in half as one CHANGE and the result is marked approximate. Heap use is
+ * therefore bounded by the window size, not the file size. Lines are split on '\n'
+ * like {@link LineIndex}, so a trailing newline yields a final empty line, and two
+ * lines are taken as equal when their hashes are.
+ * No use of ++ or -- operators (per user request).
+ */
+public final class StreamingDiff {
+
+    /** Receives hunks in order; touching rows of the same type arrive merged. */
+    public interface Sink {
+        void hunk(HunkType type, int leftStart, int leftEnd, int rightStart, int rightEnd);
+    }
+
+    /** Lines held per side; with the Myers trace this keeps a window pair to a few MB. */
+    public static final int DEFAULT_WINDOW_LINES = 8192;
+    /** Bytes mapped at a time per file. */
+    static final int MAP_CHUNK = 64 << 20;
+    /** Equal lines needed in a row before the windows may slide past them. */
+    static final int ANCHOR_LINES = 4;
+
+    private StreamingDiff() {}
+
+    /** Diffs the files into an in-memory result; only the hunks are held, never the text. */
+    public static DiffEngine.Result diff(Path left, Path right, int windowLines, DiffEngine.Budget budget,
+                                         DiffEngine.CancelToken cancel) throws IOException {
+        HunkTable.Builder rows = new HunkTable.Builder(64);
+        boolean approximate = diff(left, right, windowLines, budget, cancel, rows::add);
+        return new DiffEngine.Result(rows.build(), approximate);
+    }
+
+    /** Streams the hunks of left vs right into sink; returns true when the result is approximate. */
+    public static boolean diff(Path left, Path right, int windowLines, DiffEngine.Budget budget,
+                               DiffEngine.CancelToken cancel, Sink sink) throws IOException {
+        int w = Math.max(2 * ANCHOR_LINES, windowLines);
+        try (MappedLines lr = new MappedLines(left); MappedLines rr = new MappedLines(right)) {
+            Window a = new Window(lr, w);
+            Window b = new Window(rr, w);
+            Coalescer out = new Coalescer(sink);
+            boolean approximate = false;
+            while (true) {
+                cancel.check();
+                a.fill();
+                b.fill();
+                if (a.count == 0 && b.count == 0) break;
+
+                int k = 0;
+                while (k < a.count && k < b.count && a.keys[k] == b.keys[k]) {
+                    k = k + 1;
+                }
+                if (k > 0) {
+                    out.add(HunkType.EQUAL, a.start, a.start + k, b.start, b.start + k);
+                    a.consume(k);
+                    b.consume(k);
+                    continue;
+                }
+                if (a.count == 0 || b.count == 0) {
+                    out.add(a.count == 0 ? HunkType.INSERT : HunkType.DELETE,
+                            a.start, a.start + a.count, b.start, b.start + b.count);
+                    a.consume(a.count);
+                    b.consume(b.count);
+                    continue;
+                }
+
+                int[][] ids = intern(a, b);
+                DiffEngine.Result r = DiffEngine.diffIds(ids[0], ids[1], DiffEngine.Strategy.AUTO, budget, cancel);
+                approximate = approximate || r.approximate;
+                HunkTable t = r.table;
+                int rows = t.size();
+                if (!(a.reader.isDone() && b.reader.isDone())) {
+                    // keep what follows the last solid anchor for the next, refilled window
+                    int anchor = rows - 1;
+                    while (anchor >= 0 && !(t.type(anchor) == HunkType.EQUAL
+                            && t.leftEnd(anchor) - t.leftStart(anchor) >= ANCHOR_LINES)) {
+                        anchor = anchor - 1;
+                    }
+                    if (anchor < 0) {
+                        approximate = true;
+                        int ha = (a.count + 1) / 2;
+                        int hb = (b.count + 1) / 2;
+                        out.add(HunkType.CHANGE, a.start, a.start + ha, b.start, b.start + hb);
+                        a.consume(ha);
+                        b.consume(hb);
+                        continue;
+                    }
+                    rows = anchor + 1;
+                }
+                int row = 0;
+                while (row < rows) {
+                    out.add(t.type(row), a.start + t.leftStart(row), a.start + t.leftEnd(row),
+                            b.start + t.rightStart(row), b.start + t.rightEnd(row));
+                    row = row + 1;
+                }
+                a.consume(t.leftEnd(rows - 1));
+                b.consume(t.rightEnd(rows - 1));
+            }
+            out.flush();
+            return approximate;
+        }
+    }
+
+    /** Ids for the lines of both windows; equal keys get equal ids. */
+    private static int[][] intern(Window a, Window b) {
+        int cap = Integer.highestOneBit(Math.max(16, 2 * (a.count + b.count) - 1)) << 1;
+        long[] keys = new long[cap];
+        int[] vals = new int[cap];   // id + 1; 0 marks an empty slot
+        int mask = cap - 1;
+        int next = 0;
+        int[][] ids = new int[][]{new int[a.count], new int[b.count]};
+        Window[] sides = {a, b};
+        int side = 0;
+        while (side < 2) {
+            Window win = sides[side];
+            int[] out = ids[side];
+            int i = 0;
+            while (i < win.count) {
+                long key = win.keys[i];
+                int slot = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+                while (vals[slot] != 0 && keys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (vals[slot] == 0) {
+                    keys[slot] = key;
+                    next = next + 1;
+                    vals[slot] = next;
+                }
+                out[i] = vals[slot] - 1;
+                i = i + 1;
+            }
+            side = side + 1;
+        }
+        return ids;
+    }
+
+    /** Up to capacity line keys of one side, starting at global line start. */
+    private static final class Window {
+        final MappedLines reader;
+        final long[] keys;
+        int count;
+        int start;
+
+        Window(MappedLines reader, int capacity) {
+            this.reader = reader;
+            this.keys = new long[capacity];
+        }
+
+        void fill() throws IOException {
+            while (count < keys.length && reader.next()) {
+                keys[count] = reader.key();
+                count = count + 1;
+            }
+        }
+
+        void consume(int n) throws IOException {
+            if ((long) start + n > Integer.MAX_VALUE) throw new IOException("Too many lines to diff");
+            System.arraycopy(keys, n, keys, 0, count - n);
+            count = count - n;
+            start = start + n;
+        }
+    }
+
+    /** Forwards rows to the sink, merging touching rows of one type and touching edits into CHANGE. */
+    private static final class Coalescer {
+        private final Sink sink;
+        private HunkType type;
+        private int ls;
+        private int le;
+        private int rs;
+        private int re;
+
+        Coalescer(Sink sink) {
+            this.sink = sink;
+        }
+
+        void add(HunkType t, int leftStart, int leftEnd, int rightStart, int rightEnd) {
+            if (leftStart == leftEnd && rightStart == rightEnd) return;
+            if (type != null && le == leftStart && re == rightStart
+                    && (type == t || (type != HunkType.EQUAL && t != HunkType.EQUAL))) {
+                type = type == t ? t : HunkType.CHANGE;
+                le = leftEnd;
+                re = rightEnd;
+                return;
+            }
+            flush();
+            type = t;
+            ls = leftStart;
+            le = leftEnd;
+            rs = rightStart;
+            re = rightEnd;
+        }
+
+        void flush() {
+            if (type != null) {
+                sink.hunk(type, ls, le, rs, re);
+                type = null;
+            }
+        }
+    }
+
+    /**
+     * Sequential line reader over a file mapped {@link #MAP_CHUNK} bytes at a time.
+     * A line running past the end of a mapping is read again from a mapping that starts
+     * at the line, so each line is scanned and hashed in one piece by {@link ByteScan}.
+     */
+    private static final class MappedLines implements Closeable {
+        private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer buf;
+        private long base;
+        private long pos;
+        private boolean done;
+        private long key;
+
+        MappedLines(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        boolean isDone() { return done; }
+        long key() { return key; }
+
+        /** Advances to the next line; false once the final line has been read. */
+        boolean next() throws IOException {
+            if (done) return false;
+            if (pos >= size) {
+                // empty file, or the empty line after a trailing newline
+                key = ByteScan.hash(EMPTY, 0, 0);
+                done = true;
+                return true;
+            }
+            if (buf == null || pos >= base + buf.limit()) {
+                map(pos, MAP_CHUNK);
+            }
+            while (true) {
+                int from = (int) (pos - base);
+                int lim = buf.limit();
+                int nl = ByteScan.indexOf(buf, from, lim);
+                if (nl < lim || base + lim >= size) {
+                    key = ByteScan.hash(buf, from, nl);
+                    pos = base + nl + 1;
+                    done = nl == lim;
+                    return true;
+                }
+                long span = base + lim - pos;
+                if (span >= Integer.MAX_VALUE / 2) throw new IOException("Line too long to diff at byte " + pos);
+                map(pos, (int) Math.max(MAP_CHUNK, 2 * span));
+            }
+        }
+
+        /** Maps [at, at + length) in place of the previous mapping, which is released. */
+        private void map(long at, int length) throws IOException {
+            MappedByteBuffer old = buf;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(length, size - at));
+            base = at;
+            if (old != null) PagedText.unmap(old);
+        }
+
+        /** Unmaps the file too, so it can be replaced right after the diff (see {@link PagedText#unmap}). */
+        @Override public void close() throws IOException {
+            if (buf != null) {
+                PagedText.unmap(buf);
+                buf = null;
+            }
+            channel.close();
+        }
+    }
+}
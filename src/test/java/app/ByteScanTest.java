@@ -0,0 +1,51 @@
+package app;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ByteScanTest {
+
+    @Test
+    public void findsNewlinesLikeAByteLoop() {
+        Random rnd = new Random(3);
+        int iter = 0;
+        while (iter < 300) {
+            byte[] bytes = new byte[rnd.nextInt(200)];
+            int i = 0;
+            while (i < bytes.length) {
+                int pick = rnd.nextInt(12);
+                bytes[i] = pick == 0 ? (byte) '\n' : pick == 1 ? (byte) 0x8a : pick == 2 ? 0x0b : (byte) rnd.nextInt(256);
+                i = i + 1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(bytes).order(iter % 2 == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            int from = bytes.length == 0 ? 0 : rnd.nextInt(bytes.length);
+            int to = from + rnd.nextInt(bytes.length - from + 1);
+            assertEquals(naiveIndexOf(bytes, from, to), ByteScan.indexOf(buf, from, to));
+            assertEquals(naiveIndexOf(bytes, from, to), ByteScan.indexOfSwar(buf, from, to));
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void hashDependsOnContentNotPosition() {
+        byte[] bytes = "xxabcdefghijk\nabcdefghijk\nabcdefghijl\n\u0000".getBytes();
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        assertEquals(ByteScan.hash(buf, 2, 13), ByteScan.hash(buf, 14, 25));
+        assertNotEquals(ByteScan.hash(buf, 14, 25), ByteScan.hash(buf, 26, 37));
+        assertNotEquals(ByteScan.hash(buf, 0, 0), ByteScan.hash(buf, 38, 39));
+    }
+
+    private static int naiveIndexOf(byte[] bytes, int from, int to) {
+        int i = from;
+        while (i < to && bytes[i] != '\n') {
+            i = i + 1;
+        }
+        return i;
+    }
+}
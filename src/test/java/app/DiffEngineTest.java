@@ -0,0 +1,422 @@
+package app;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiffEngineTest {
+
+    @Test
+    public void linearMyersMatchesClassicEditDistance() {
+        Random rnd = new Random(7);
+        int iter = 0;
+        while (iter < 500) {
+            String left = randomLines(rnd, rnd.nextInt(40), 4);
+            String right = randomLines(rnd, rnd.nextInt(40), 4);
+            DiffEngine.Result classic = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.MYERS);
+            DiffEngine.Result linear = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.LINEAR_MYERS);
+            assertCovers(linear, left, right);
+            assertEquals(editCost(classic), editCost(linear));
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void linearMyersFindsSingleChangeInLargeInput() {
+        StringBuilder l = new StringBuilder();
+        StringBuilder r = new StringBuilder();
+        int i = 0;
+        while (i < 20000) {
+            l.append("line ").append(i).append('\n');
+            r.append(i == 12345 ? "edited" : "line " + i).append('\n');
+            i = i + 1;
+        }
+        DiffEngine.Result res = DiffEngine.diffLinesNormalized(l.toString(), r.toString(), s -> s);
+        List<DiffEngine.Hunk> changes = res.changeHunks();
+        assertEquals(1, changes.size());
+        assertEquals(new DiffEngine.Hunk(DiffEngine.HunkType.CHANGE, 12345, 12346, 12345, 12346), changes.get(0));
+    }
+
+    @Test
+    public void histogramProducesValidHunksOnRepetitiveInput() {
+        Random rnd = new Random(11);
+        int iter = 0;
+        while (iter < 500) {
+            String left = randomLines(rnd, rnd.nextInt(60), 3);
+            String right = randomLines(rnd, rnd.nextInt(60), 3);
+            assertCovers(DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.HISTOGRAM), left, right);
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void histogramKeepsRepeatedBlocksAligned() {
+        String left = "}\n\nalpha\n}\n\nbeta\n}";
+        String right = "}\n\nbeta\n}\n\nalpha\n}";
+        DiffEngine.Result res = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.HISTOGRAM);
+        assertCovers(res, left, right);
+        assertEquals(4, editCost(res));
+        assertEquals(3, res.hunks.size() - res.changeHunks().size());
+    }
+
+    @Test
+    public void patienceProducesValidHunks() {
+        Random rnd = new Random(13);
+        int iter = 0;
+        while (iter < 500) {
+            String left = randomLines(rnd, rnd.nextInt(60), 12);
+            String right = randomLines(rnd, rnd.nextInt(60), 12);
+            assertCovers(DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.PATIENCE), left, right);
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void patienceAnchorsUniqueLinesOfMovedBlock() {
+        String left = "void a() {\n}\nvoid b() {\n  work();\n}\nvoid c() {\n}";
+        String right = "void b() {\n  work();\n}\nvoid a() {\n}\nvoid c() {\n}";
+        DiffEngine.Result res = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.PATIENCE);
+        assertCovers(res, left, right);
+        assertEquals(new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 2, 4, 0, 2), res.hunks.get(1));
+    }
+
+    @Test
+    public void autoOnLargeInputMatchesSingleThreadedCost() {
+        Random rnd = new Random(17);
+        StringBuilder l = new StringBuilder();
+        StringBuilder r = new StringBuilder();
+        int i = 0;
+        while (i < 40000) {
+            String line = "row " + i;
+            l.append(line).append('\n');
+            int pick = rnd.nextInt(300);
+            if (pick == 0) {
+                r.append("edited ").append(i).append('\n');
+            } else if (pick != 1) {
+                r.append(line).append('\n');
+            }
+            i = i + 1;
+        }
+        String left = l.toString();
+        String right = r.toString();
+        DiffEngine.Result auto = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.AUTO);
+        DiffEngine.Result linear = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.LINEAR_MYERS);
+        assertCovers(auto, left, right);
+        assertEquals(editCost(linear), editCost(auto));
+    }
+
+    @Test
+    public void refineChangesKeepsLongestCommonSubsequence() {
+        Random rnd = new Random(19);
+        int iter = 0;
+        while (iter < 200) {
+            // few distinct lines take the mask table, many take the per-row chains
+            int alphabet = iter % 2 == 0 ? 6 : 500;
+            String left = randomLines(rnd, 1 + rnd.nextInt(150), alphabet);
+            String right = randomLines(rnd, 1 + rnd.nextInt(150), alphabet);
+            String[] l = left.split("\n", -1);
+            String[] r = right.split("\n", -1);
+            DiffEngine.Result base = new DiffEngine.Result(List.of(
+                    new DiffEngine.Hunk(DiffEngine.HunkType.CHANGE, 0, l.length, 0, r.length)));
+            DiffEngine.Result refined = DiffEngine.refineChanges(base, left, right);
+            int kept = 0;
+            for (DiffEngine.Hunk h : refined.hunks) {
+                if (h.type() == DiffEngine.HunkType.EQUAL) {
+                    assertEquals(l[h.leftStart()], r[h.rightStart()]);
+                    kept = kept + (h.leftEnd() - h.leftStart());
+                }
+            }
+            assertEquals(naiveLcs(l, r), kept);
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void exhaustedBudgetStillTilesBothSides() {
+        Random rnd = new Random(23);
+        String left = randomLines(rnd, 400, 5);
+        String right = randomLines(rnd, 400, 5);
+        DiffEngine.Result exact = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.LINEAR_MYERS);
+        DiffEngine.Result capped = DiffEngine.diffLinesNormalized(left, right, s -> s, DiffEngine.Strategy.LINEAR_MYERS,
+                new DiffEngine.Budget(4, 0, 0));
+        assertCovers(capped, left, right);
+        assertTrue(capped.approximate);
+        assertFalse(exact.approximate);
+        assertTrue(editCost(capped) >= editCost(exact));
+    }
+
+    @Test
+    public void ignoreWhitespaceFlagMatchesRegexNormalizer() {
+        String left = "a b\n\tc\nd  e\nf\n";
+        String right = "ab\nc \nde\ng\n";
+        DiffEngine.Result regex = DiffEngine.diffLinesNormalized(left, right, s -> s.replaceAll("\\s+", ""));
+        DiffEngine.Result flags = DiffEngine.diffLinesNormalized(left, right,
+                LineCompare.normalizer(LineCompare.IGNORE_WHITESPACE));
+        assertEquals(regex.hunks, flags.hunks);
+        assertEquals(1, flags.changeHunks().size());
+    }
+
+    @Test
+    public void comparisonFlagsIgnoreCaseBlankLinesAndLineEndings() {
+        String left = "Alpha\r\n\nbeta  \r\ngamma\r\n";
+        String right = "alpha\nbeta\n\n\ngamma\n";
+        int flags = LineCompare.IGNORE_CASE | LineCompare.IGNORE_BLANK_LINES
+                | LineCompare.IGNORE_TRAILING_WHITESPACE | LineCompare.IGNORE_LINE_ENDINGS;
+        DiffEngine.Result res = DiffEngine.diffLinesNormalized(left, right, LineCompare.normalizer(flags));
+        assertTrue(res.changeHunks().isEmpty());
+        DiffEngine.Hunk last = res.hunks.get(res.hunks.size() - 1);
+        assertEquals(5, last.leftEnd());
+        assertEquals(6, last.rightEnd());
+
+        DiffEngine.Result strict = DiffEngine.diffLinesNormalized(left, right,
+                LineCompare.normalizer(LineCompare.IGNORE_LINE_ENDINGS));
+        assertFalse(strict.changeHunks().isEmpty());
+    }
+
+    @Test
+    public void parallelInterningMatchesSequential() {
+        Random rnd = new Random(41);
+        String left = randomLines(rnd, DiffEngine.PARALLEL_INTERN_LINES + 5000, 2000);
+        StringBuilder r = new StringBuilder(left);
+        int i = 0;
+        while (i < 200) {
+            int at = rnd.nextInt(r.length());
+            r.insert(at, i % 2 == 0 ? "\n  x " + i : " ");
+            i = i + 1;
+        }
+        String right = r.toString();
+        java.util.function.Function<String, String> ws = LineCompare.normalizer(LineCompare.IGNORE_WHITESPACE);
+        // a StringBuilder keeps the sequential path
+        DiffEngine.Result parallel = DiffEngine.diffLinesNormalized(LineIndex.of(left), LineIndex.of(right),
+                ws, DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED);
+        DiffEngine.Result sequential = DiffEngine.diffLinesNormalized(LineIndex.of(new StringBuilder(left)),
+                LineIndex.of(new StringBuilder(right)), ws, DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED);
+        assertEquals(sequential.hunks, parallel.hunks);
+        assertFalse(parallel.changeHunks().isEmpty());
+    }
+
+    @Test
+    public void lineCacheKeepsIdsOfUnchangedLinesAcrossEdits() {
+        Random rnd = new Random(31);
+        DiffEngine.LineCache cache = new DiffEngine.LineCache(1000);
+        String left = randomLines(rnd, 300, 40);
+        String right = randomLines(rnd, 300, 40);
+        int iter = 0;
+        while (iter < 50) {
+            int at = rnd.nextInt(right.length());
+            right = right.substring(0, at) + (rnd.nextBoolean() ? "\nx" + iter : "") + right.substring(at + 1);
+            LineIndex l = LineIndex.of(left);
+            LineIndex r = LineIndex.of(right);
+            DiffEngine.Result cached = DiffEngine.diffLinesNormalized(l, r, null, DiffEngine.Strategy.AUTO,
+                    DiffEngine.Budget.UNLIMITED, DiffEngine.CancelToken.NONE, cache);
+            assertEquals(DiffEngine.diffLines(l, r).hunks, cached.hunks);
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void pipelineRefinesOverTheBaseIds() {
+        Random rnd = new Random(37);
+        int iter = 0;
+        while (iter < 50) {
+            String left = randomLines(rnd, 1 + rnd.nextInt(200), 8);
+            String right = randomLines(rnd, 1 + rnd.nextInt(200), 8);
+            LineIndex l = LineIndex.of(left);
+            LineIndex r = LineIndex.of(right);
+            DiffEngine.Pipeline exact = new DiffEngine.Pipeline(l, r, null, DiffEngine.Strategy.AUTO,
+                    DiffEngine.Budget.UNLIMITED, DiffEngine.CancelToken.NONE, null);
+            assertEquals(DiffEngine.refineChanges(exact.result(false), l, r).hunks, exact.result(true).hunks);
+
+            // a tight budget leaves CHANGE rows whose lines only differ in whitespace
+            String spaced = right.replace("\n", " \n");
+            LineIndex s = LineIndex.of(spaced);
+            DiffEngine.Pipeline ws = new DiffEngine.Pipeline(l, s, LineCompare.normalizer(LineCompare.IGNORE_WHITESPACE),
+                    DiffEngine.Strategy.LINEAR_MYERS, new DiffEngine.Budget(2, 0, 0), DiffEngine.CancelToken.NONE, null);
+            DiffEngine.Result refined = ws.result(true);
+            int li = 0;
+            int ri = 0;
+            for (DiffEngine.Hunk h : refined.hunks) {
+                li = li + (h.leftEnd() - h.leftStart());
+                ri = ri + (h.rightEnd() - h.rightStart());
+                assertFalse(h.type() == DiffEngine.HunkType.CHANGE);
+                if (h.type() == DiffEngine.HunkType.EQUAL) {
+                    assertEquals(l.line(h.leftStart()), s.line(h.rightStart()).trim());
+                }
+            }
+            assertEquals(l.lineCount(), li);
+            assertEquals(s.lineCount(), ri);
+            assertTrue(equalLines(refined) >= equalLines(ws.result(false)));
+            iter = iter + 1;
+        }
+
+        // with blank lines ignored the refined rows are mapped back over the blank lines
+        int flags = LineCompare.IGNORE_CASE | LineCompare.IGNORE_BLANK_LINES;
+        assertTiles(refinedIgnoringBlanks("A\nc", "e\nA\na", flags, DiffEngine.Strategy.AUTO), 2, 3);
+        DiffEngine.Strategy[] strategies = DiffEngine.Strategy.values();
+        iter = 0;
+        while (iter < 300) {
+            String left = randomLines(rnd, 1 + rnd.nextInt(40), 5).replace('d', ' ').replace('e', 'A');
+            String right = randomLines(rnd, 1 + rnd.nextInt(40), 5).replace('d', ' ').replace('e', 'A');
+            DiffEngine.Strategy strategy = strategies[iter % strategies.length];
+            int f = iter % 2 == 0 ? flags : flags | LineCompare.IGNORE_WHITESPACE;
+            DiffEngine.Result res = refinedIgnoringBlanks(left, right, f, strategy);
+            assertTiles(res, LineIndex.of(left).lineCount(), LineIndex.of(right).lineCount());
+            iter = iter + 1;
+        }
+    }
+
+    private static DiffEngine.Result refinedIgnoringBlanks(String left, String right, int flags,
+                                                           DiffEngine.Strategy strategy) {
+        DiffEngine.Pipeline run = new DiffEngine.Pipeline(LineIndex.of(left), LineIndex.of(right),
+                LineCompare.normalizer(flags), strategy, DiffEngine.Budget.UNLIMITED, DiffEngine.CancelToken.NONE, null);
+        DiffEngine.Result res = run.result(true);
+        for (DiffEngine.Hunk h : res.hunks) {
+            assertFalse(h.type() == DiffEngine.HunkType.CHANGE);
+        }
+        return res;
+    }
+
+    /** Rows follow each other without gaps or negative ranges and cover both sides. */
+    private static void assertTiles(DiffEngine.Result res, int leftLines, int rightLines) {
+        int li = 0;
+        int ri = 0;
+        for (DiffEngine.Hunk h : res.hunks) {
+            assertEquals(li, h.leftStart());
+            assertEquals(ri, h.rightStart());
+            assertTrue(h.leftEnd() >= h.leftStart() && h.rightEnd() >= h.rightStart());
+            li = h.leftEnd();
+            ri = h.rightEnd();
+        }
+        assertEquals(leftLines, li);
+        assertEquals(rightLines, ri);
+    }
+
+    @Test
+    public void cancelledTokenAbortsDiff() throws InterruptedException {
+        Random rnd = new Random(29);
+        LineIndex left = LineIndex.of(randomLines(rnd, 60000, 50));
+        LineIndex right = LineIndex.of(randomLines(rnd, 60000, 50));
+        DiffEngine.CancelToken cancel = new DiffEngine.CancelToken();
+        // uncancelled, this diff runs for minutes; cancel it from here once it has started
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread run = new Thread(() -> {
+            try {
+                DiffEngine.diffLinesNormalized(left, right, line -> {
+                    started.countDown();
+                    return line;
+                }, DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, cancel);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        run.setDaemon(true);
+        run.start();
+        try {
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+            cancel.cancel();
+            run.join(10000);
+            assertFalse("diff still running after cancel", run.isAlive());
+            assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof DiffEngine.DiffCancelledException);
+        } finally {
+            cancel.cancel();
+        }
+    }
+
+    @Test
+    public void rediffWindowSplicesEditIntoPreviousResult() {
+        StringBuilder l = new StringBuilder();
+        int i = 0;
+        while (i < 5000) {
+            l.append("line ").append(i).append('\n');
+            i = i + 1;
+        }
+        String left = l.toString();
+        String before = left.replace("line 100\n", "changed\n");
+        DiffEngine.Result previous = DiffEngine.diffLinesNormalized(left, before, null);
+
+        // replace right line 4000 with two lines
+        String after = before.replace("line 4000\n", "typed\nmore\n");
+        EditWindow edit = new EditWindow();
+        edit.record(4000, 1, 2);
+        DiffEngine.Result res = DiffEngine.rediffWindow(previous, LineIndex.of(left), LineIndex.of(after),
+                new EditWindow(), edit, null, DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false, 1000);
+        assertCovers(res, left, after);
+        assertEquals(DiffEngine.diffLinesNormalized(left, after, null).hunks, res.hunks);
+    }
+
+    private static int equalLines(DiffEngine.Result res) {
+        int n = 0;
+        for (DiffEngine.Hunk h : res.hunks) {
+            if (h.type() == DiffEngine.HunkType.EQUAL) n = n + (h.leftEnd() - h.leftStart());
+        }
+        return n;
+    }
+
+    static int naiveLcs(String[] a, String[] b) {
+        int[][] dp = new int[a.length + 1][b.length + 1];
+        int i = a.length - 1;
+        while (i >= 0) {
+            int j = b.length - 1;
+            while (j >= 0) {
+                dp[i][j] = a[i].equals(b[j]) ? 1 + dp[i + 1][j + 1] : Math.max(dp[i + 1][j], dp[i][j + 1]);
+                j = j - 1;
+            }
+            i = i - 1;
+        }
+        return dp[0][0];
+    }
+
+    static String randomLines(Random rnd, int count, int alphabet) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < count) {
+            if (i > 0) sb.append('\n');
+            sb.append((char) ('a' + rnd.nextInt(alphabet)));
+            i = i + 1;
+        }
+        return sb.toString();
+    }
+
+    static int editCost(DiffEngine.Result res) {
+        int cost = 0;
+        for (DiffEngine.Hunk h : res.hunks) {
+            if (h.isChangeLike()) {
+                cost = cost + (h.leftEnd() - h.leftStart()) + (h.rightEnd() - h.rightStart());
+            }
+        }
+        return cost;
+    }
+
+    /** Hunks must tile both sides in order and EQUAL hunks must really be equal. */
+    static void assertCovers(DiffEngine.Result res, String left, String right) {
+        String[] l = left.split("\n", -1);
+        String[] r = right.split("\n", -1);
+        int li = 0;
+        int ri = 0;
+        for (DiffEngine.Hunk h : res.hunks) {
+            assertEquals(li, h.leftStart());
+            assertEquals(ri, h.rightStart());
+            if (h.type() == DiffEngine.HunkType.EQUAL) {
+                assertEquals(h.leftEnd() - h.leftStart(), h.rightEnd() - h.rightStart());
+                int k = 0;
+                while (k < h.leftEnd() - h.leftStart()) {
+                    assertEquals(l[h.leftStart() + k], r[h.rightStart() + k]);
+                    k = k + 1;
+                }
+            }
+            li = h.leftEnd();
+            ri = h.rightEnd();
+        }
+        assertEquals(l.length, li);
+        assertEquals(r.length, ri);
+    }
+}
@@ -0,0 +1,60 @@
+package app;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DiffSessionTest {
+
+    private static final DiffEngine.Budget TIGHT = new DiffEngine.Budget(4, 0, 0);
+
+    @Test
+    public void resultCacheHitsOnlyForSameContentAndOptions() {
+        DiffSession session = new DiffSession();
+        String left = "a\nqqq\nbbbbbbbb\nd\n";
+        StringBuilder right = new StringBuilder("a\nbbbbbbbb x\nd\n");
+        DiffSession.ResultKey key = session.resultKey(left, right, 0, false,
+                DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false);
+        DiffEngine.Result diff = DiffEngine.diffLines(left, right.toString());
+        session.cacheResult(key, diff);
+
+        // same content from another CharSequence hits, with similarity pairs over the given lines
+        LineIndex l = LineIndex.of(left);
+        LineIndex r = LineIndex.of(right.toString());
+        DiffEngine.Result hit = session.cachedResult(session.resultKey(left, right.toString(), 0, false,
+                DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false), l, r);
+        assertSame(diff.table, hit.table);
+        assertEquals(diff.hunks, hit.hunks);
+        assertEquals(diff.moves, hit.moves);
+        assertEquals(1, hit.pairs.partner(true, 2));
+
+        List<DiffSession.ResultKey> misses = List.of(
+                session.resultKey(left, right, LineCompare.IGNORE_WHITESPACE, false,
+                        DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false),
+                session.resultKey(left, right, 0, true,
+                        DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false),
+                session.resultKey(left, right, 0, false,
+                        DiffEngine.Strategy.PATIENCE, DiffEngine.Budget.UNLIMITED, false),
+                session.resultKey(left, right, 0, false,
+                        DiffEngine.Strategy.AUTO, TIGHT, false),
+                session.resultKey(left, right, 0, false,
+                        DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, true),
+                session.resultKey(left, right.append('x'), 0, false,
+                        DiffEngine.Strategy.AUTO, DiffEngine.Budget.UNLIMITED, false));
+        for (DiffSession.ResultKey miss : misses) {
+            assertNull(session.cachedResult(miss, l, r));
+        }
+    }
+
+    @Test
+    public void blockDigestMatchesWholeStringDigest() {
+        String text = "ü€😀\n".repeat(40000);
+        assertEquals(DiffSession.digest(text), DiffSession.digest(new StringBuilder(text)));
+        assertNotEquals(DiffSession.digest(text), DiffSession.digest(text + " "));
+    }
+}
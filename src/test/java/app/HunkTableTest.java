@@ -0,0 +1,60 @@
+package app;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class HunkTableTest {
+
+    @Test
+    public void mergesTouchingEqualRows() {
+        HunkTable table = HunkTable.of(List.of(
+                new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 0, 1, 0, 1),
+                new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 1, 2, 1, 2),
+                new DiffEngine.Hunk(DiffEngine.HunkType.DELETE, 2, 4, 2, 2),
+                new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 4, 5, 2, 3)));
+        assertEquals(3, table.size());
+        assertEquals(new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 0, 2, 0, 2), table.hunk(0));
+        assertEquals(1, table.changeCount());
+        assertEquals(0, table.changeIndexAt(true, 3));
+        assertEquals(-1, table.changeIndexAt(false, 2));
+    }
+
+    @Test
+    public void lineLookupMatchesLinearScan() {
+        Random rnd = new Random(29);
+        int iter = 0;
+        while (iter < 300) {
+            String left = DiffEngineTest.randomLines(rnd, 1 + rnd.nextInt(80), 5);
+            String right = DiffEngineTest.randomLines(rnd, 1 + rnd.nextInt(80), 5);
+            DiffEngine.Result res = DiffEngine.diffLinesNormalized(left, right, null);
+            if (rnd.nextBoolean()) {
+                res = DiffEngine.refineChanges(res, left, right);
+            }
+            int line = 0;
+            while (line < 90) {
+                assertEquals(scan(res.hunks, true, line), find(res, true, line));
+                assertEquals(scan(res.hunks, false, line), find(res, false, line));
+                line = line + 1;
+            }
+            iter = iter + 1;
+        }
+    }
+
+    private static DiffEngine.Hunk find(DiffEngine.Result res, boolean leftSide, int line) {
+        int k = res.table.changeIndexAt(leftSide, line);
+        return k < 0 ? null : res.changeHunks().get(k);
+    }
+
+    private static DiffEngine.Hunk scan(List<DiffEngine.Hunk> hunks, boolean leftSide, int line) {
+        for (DiffEngine.Hunk h : hunks) {
+            int start = leftSide ? h.leftStart() : h.rightStart();
+            int end = leftSide ? h.leftEnd() : h.rightEnd();
+            if (h.isChangeLike() && line >= start && line < end) return h;
+        }
+        return null;
+    }
+}
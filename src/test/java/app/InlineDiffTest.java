@@ -0,0 +1,40 @@
+package app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InlineDiffTest {
+
+    @Test
+    public void editsAtBothEndsGiveSeparateSpans() {
+        String l = "int count = compute(a, b);";
+        String r = "long count = compute(a, c);";
+        InlineDiff.Spans spans = InlineDiff.diff(l, r);
+        assertArrayEquals(new int[] { 0, 3, 23, 24 }, spans.left());
+        assertArrayEquals(new int[] { 0, 4, 24, 25 }, spans.right());
+    }
+
+    @Test
+    public void identicalLinesHaveNoSpans() {
+        assertTrue(InlineDiff.diff("same line", "same line").isEmpty());
+    }
+
+    @Test
+    public void longLineKeepsEditsPrecise() {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < 5000) {
+            sb.append("w").append(i).append(' ');
+            i = i + 1;
+        }
+        String l = sb.toString();
+        String r = l.replace("w10 ", "W10 ").replace("w4000 ", "w4000x ");
+        InlineDiff.Spans spans = InlineDiff.diff(l, r);
+        int at = l.indexOf("w10 ");
+        int far = l.indexOf("w4000 ");
+        assertArrayEquals(new int[] { at, at + 3, far, far + 5 }, spans.left());
+        assertArrayEquals(new int[] { at, at + 3, far, far + 6 }, spans.right());
+    }
+}
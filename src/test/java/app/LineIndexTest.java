@@ -0,0 +1,117 @@
+package app;
+
+import org.junit.Test;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineIndexTest {
+
+    @Test
+    public void splitsLikeStringSplitAndHashesInPlace() {
+        String text = "alpha\n\nbeta\ngamma\n";
+        LineIndex idx = LineIndex.of(text);
+        assertEquals(Arrays.asList(text.split("\n", -1)), idx.asList());
+        int i = 0;
+        while (i < idx.lineCount()) {
+            assertEquals(idx.line(i).hashCode(), idx.hash(i));
+            i = i + 1;
+        }
+    }
+
+    @Test
+    public void comparesLinesAcrossIndexes() {
+        LineIndex left = LineIndex.of("one\ntwo\nthree");
+        LineIndex right = LineIndex.of("two\nthree\nthre");
+        assertTrue(left.sameLine(1, right, 0));
+        assertTrue(left.sameLine(2, right, 1));
+        assertFalse(left.sameLine(2, right, 2));
+    }
+
+    @Test
+    public void parallelSplitMatchesSequential() {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < LineIndex.PARALLEL_CHARS + 1000) {
+            sb.append("line ").append(i % 97 == 0 ? "" : "text " + i).append('\n');
+            i = i + 1;
+        }
+        sb.append("no newline at end");
+        assertSameSplit(sb);
+
+        // a few long lines, so that whole chunks hold no newline
+        StringBuilder sparse = new StringBuilder();
+        sparse.append("x".repeat(LineIndex.PARALLEL_CHARS / 3)).append('\n').append('\n');
+        sparse.append("y".repeat(LineIndex.PARALLEL_CHARS)).append('\n');
+        sparse.append("z".repeat(LineIndex.PARALLEL_CHARS / 5));
+        assertSameSplit(sparse);
+    }
+
+    private static void assertSameSplit(CharSequence text) {
+        LineIndex parallel = LineIndex.of(text.toString());
+        LineIndex sequential = LineIndex.of(text);
+        assertEquals(sequential.lineCount(), parallel.lineCount());
+        int line = 0;
+        while (line < parallel.lineCount()) {
+            assertEquals(sequential.start(line), parallel.start(line));
+            assertEquals(sequential.end(line), parallel.end(line));
+            line = line + 1;
+        }
+    }
+
+    @Test
+    public void splicedIndexMatchesFullSplitAfterDocumentEdits() throws Exception {
+        Random rnd = new Random(5);
+        int iter = 0;
+        while (iter < 200) {
+            String text = DiffEngineTest.randomLines(rnd, 1 + rnd.nextInt(30), 4);
+            PlainDocument doc = new PlainDocument();
+            doc.insertString(0, text, null);
+            EditWindow window = new EditWindow();
+            doc.addDocumentListener(new DocumentListener() {
+                @Override public void insertUpdate(DocumentEvent e) { record(e); }
+                @Override public void removeUpdate(DocumentEvent e) { record(e); }
+                @Override public void changedUpdate(DocumentEvent e) {}
+                private void record(DocumentEvent e) {
+                    Element root = doc.getDefaultRootElement();
+                    DocumentEvent.ElementChange change = e.getChange(root);
+                    if (change != null) {
+                        window.record(change.getIndex(), change.getChildrenRemoved().length, change.getChildrenAdded().length);
+                    } else {
+                        window.record(root.getElementIndex(e.getOffset()), 1, 1);
+                    }
+                }
+            });
+            int edits = 1 + rnd.nextInt(3);
+            while (edits > 0) {
+                int len = doc.getLength();
+                int at = rnd.nextInt(len + 1);
+                if (rnd.nextBoolean() && len > at) {
+                    doc.remove(at, 1 + rnd.nextInt(Math.min(6, len - at)));
+                } else {
+                    doc.insertString(at, rnd.nextBoolean() ? "x\ny" : "z", null);
+                }
+                edits = edits - 1;
+            }
+            String now = doc.getText(0, doc.getLength());
+            LineIndex spliced = LineIndex.spliced(LineIndex.of(text), now, window);
+            LineIndex full = LineIndex.of(now);
+            assertEquals(full.lineCount(), spliced.lineCount());
+            int line = 0;
+            while (line < full.lineCount()) {
+                assertEquals(full.start(line), spliced.start(line));
+                assertEquals(full.end(line), spliced.end(line));
+                line = line + 1;
+            }
+            iter = iter + 1;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package app;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LinePairsTest {
+
+    @Test
+    public void insertedLineAtTopDoesNotShiftPairs() {
+        LineIndex left = LineIndex.of("int alpha = 1;\nint beta = 2;\nint gamma = 3;");
+        LineIndex right = LineIndex.of("// header comment\nint alpha = 10;\nint beta = 20;\nint gamma = 30;");
+        HunkTable table = HunkTable.of(List.of(new DiffEngine.Hunk(DiffEngine.HunkType.CHANGE, 0, 3, 0, 4)));
+        LinePairs pairs = LinePairs.of(table, left, right);
+        assertEquals(1, pairs.partner(true, 0));
+        assertEquals(2, pairs.partner(true, 1));
+        assertEquals(3, pairs.partner(true, 2));
+        assertEquals(-1, pairs.partner(false, 0));
+        assertEquals(0, pairs.partner(false, 1));
+    }
+
+    @Test
+    public void positionalPairsByOffsetWithinHunk() {
+        HunkTable table = HunkTable.of(List.of(
+                new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 0, 1, 0, 1),
+                new DiffEngine.Hunk(DiffEngine.HunkType.CHANGE, 1, 3, 1, 2)));
+        LinePairs pairs = LinePairs.positional(table);
+        assertEquals(1, pairs.partner(true, 1));
+        assertEquals(-1, pairs.partner(true, 2));
+        assertEquals(-1, pairs.partner(true, 0));
+    }
+}
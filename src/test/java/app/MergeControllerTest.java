@@ -6,6 +6,7 @@ import javax.swing.*;
 import java.util.EnumSet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class MergeControllerTest {
 
@@ -54,4 +55,55 @@ public class MergeControllerTest {
             throw new AssertionError("Actual right text was:\n" + actual);
         }
     }
+
+    @Test
+    public void copyAfterLastLineWithoutNewlineStartsANewLine() throws Exception {
+        EditorPane left = new EditorPane("Left");
+        EditorPane right = new EditorPane("Right");
+        DiffSession session = new DiffSession();
+        session.updateTexts("a\nb\nc", "a\nb");
+        session.updateDiff(new DiffEngine.Result(java.util.List.of(
+                new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 0, 2, 0, 2),
+                new DiffEngine.Hunk(DiffEngine.HunkType.DELETE, 2, 3, 2, 2)
+        )));
+        session.setCurrentIndex(0);
+        left.area().setText("a\nb\nc");
+        right.area().setText("a\nb");
+
+        MergeController mc = new MergeController(left, right, session, new StubSuppressor(),
+                () -> {}, () -> {}, s -> {}, () -> true);
+        SwingUtilities.invokeAndWait(() -> mc.applyCopy(true));
+        assertEquals("a\nb\nc", right.area().getText());
+        SwingUtilities.invokeAndWait(() -> mc.undoSide(false));
+        assertEquals("a\nb", right.area().getText());
+    }
+
+    @Test
+    public void copyIntoPagedDocumentEditsItInPlace() throws Exception {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("merge", ".txt");
+        java.nio.file.Files.writeString(file, "Lima\nNovember\n");
+        EditorPane left = new EditorPane("Left");
+        EditorPane right = new EditorPane("Right");
+        try {
+            PagedDocument paged = PagedDocument.open(file);
+            right.setDocument(paged);
+            left.area().setText("Lima\nMike\nNovember\n");
+            DiffSession session = new DiffSession();
+            session.updateTexts("Lima\nMike\nNovember\n", "Lima\nNovember\n");
+            session.updateDiff(new DiffEngine.Result(java.util.List.of(
+                    new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 0, 1, 0, 1),
+                    new DiffEngine.Hunk(DiffEngine.HunkType.DELETE, 1, 2, 1, 1),
+                    new DiffEngine.Hunk(DiffEngine.HunkType.EQUAL, 2, 3, 1, 2)
+            )));
+            session.setCurrentIndex(0);
+            MergeController mc = new MergeController(left, right, session, new StubSuppressor(),
+                    () -> {}, () -> {}, s -> {}, () -> true);
+            SwingUtilities.invokeAndWait(() -> mc.applyCopy(true));
+            assertSame(paged, right.area().getDocument());
+            assertEquals("Lima\nMike\nNovember\n", paged.getText(0, paged.getLength()));
+        } finally {
+            right.setDocument(new javax.swing.text.PlainDocument());
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
 }
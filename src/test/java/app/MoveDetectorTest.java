@@ -0,0 +1,53 @@
+package app;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MoveDetectorTest {
+
+    @Test
+    public void reorderedFunctionBecomesOneMove() {
+        String a = "void a() {\n  one();\n  two();\n}\n";
+        String b = "void b() {\n  three();\n  four();\n}\n";
+        LineIndex left = LineIndex.of(a + b + "tail\n");
+        LineIndex right = LineIndex.of(b + a + "tail\n");
+        DiffEngine.Result base = DiffEngine.diffLines(left, right);
+        DiffEngine.Result moved = MoveDetector.detect(base, left, right);
+
+        assertEquals(1, moved.moves.size());
+        DiffEngine.Hunk m = moved.moves.get(0);
+        assertEquals(m.leftEnd() - m.leftStart(), m.rightEnd() - m.rightStart());
+        assertTrue(m.leftEnd() - m.leftStart() >= MoveDetector.MIN_LINES);
+        int i = 0;
+        while (i < m.leftEnd() - m.leftStart()) {
+            assertEquals(left.line(m.leftStart() + i), right.line(m.rightStart() + i));
+            i = i + 1;
+        }
+        assertEquals(DiffEngine.HunkType.MOVE, moved.table.type(moved.table.rowAt(true, m.leftStart())));
+        assertEquals(DiffEngine.HunkType.MOVE, moved.table.type(moved.table.rowAt(false, m.rightStart())));
+        assertEquals(m, moved.moveAt(false, m.rightEnd() - 1));
+    }
+
+    @Test
+    public void rerunDemotesMovesFirst() {
+        LineIndex left = LineIndex.of("one\ntwo\nthree\nm1\nm2\nm3\nm4\nend");
+        LineIndex right = LineIndex.of("m1\nm2\nm3\nm4\none\ntwo\nthree\nnew\nend");
+        DiffEngine.Result once = MoveDetector.detect(DiffEngine.diffLines(left, right), left, right);
+        DiffEngine.Result twice = MoveDetector.detect(once, left, right);
+        assertEquals(List.of(new DiffEngine.Hunk(DiffEngine.HunkType.MOVE, 0, 3, 4, 7)), once.moves);
+        assertEquals(once.moves, twice.moves);
+        assertEquals(once.hunks, twice.hunks);
+    }
+
+    @Test
+    public void blankRunsAreNotMoves() {
+        LineIndex left = LineIndex.of("\n\n\nk1\nk2\nk3\nk4");
+        LineIndex right = LineIndex.of("k1\nk2\nk3\nk4\n\n\n");
+        DiffEngine.Result moved = MoveDetector.detect(DiffEngine.diffLines(left, right), left, right);
+        assertTrue(moved.moves.isEmpty());
+    }
+}
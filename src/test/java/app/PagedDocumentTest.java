@@ -0,0 +1,251 @@
+package app;
+
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.undo.UndoManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PagedDocumentTest {
+
+    @Test
+    public void linesMatchPlainDocumentAcrossSmallPages() throws Exception {
+        String text = "alpha\n\ngrüße – ü\n" + "x".repeat(40) + "\nlast\n";
+        Path file = write(text);
+        try (PagedDocument paged = new PagedDocument(PagedText.open(file, 16, 8))) {
+            assertSameLines(plain(text), paged);
+            assertEquals(text, paged.snapshot().toString());
+            assertEquals("grüße", paged.snapshot().subSequence(7, 12).toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void editsAndUndoTrackPlainDocument() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < 60) {
+            sb.append("line ").append(i).append(i % 7 == 0 ? "" : " ümlaut").append('\n');
+            i = i + 1;
+        }
+        Path file = write(sb.toString());
+        try (PagedDocument paged = new PagedDocument(PagedText.open(file, 64, 32))) {
+            PlainDocument plain = plain(sb.toString());
+            UndoManager undo = new UndoManager();
+            undo.setLimit(1000);
+            paged.addUndoableEditListener(undo);
+            Position mark = paged.createPosition(100);
+            Position plainMark = plain.createPosition(100);
+            Random rnd = new Random(7);
+            int step = 0;
+            while (step < 200) {
+                int len = plain.getLength();
+                int at = rnd.nextInt(len + 1);
+                if (rnd.nextBoolean() && len > 0) {
+                    int n = Math.min(len - at, rnd.nextInt(30));
+                    plain.remove(at, n);
+                    paged.remove(at, n);
+                } else {
+                    String s = rnd.nextInt(3) == 0 ? "new\nlines\n" : "ab";
+                    plain.insertString(at, s, null);
+                    paged.insertString(at, s, null);
+                }
+                assertSameLines(plain, paged);
+                assertEquals(plainMark.getOffset(), mark.getOffset());
+                step = step + 1;
+            }
+            assertTrue(paged.isModified());
+            while (undo.canUndo()) {
+                undo.undo();
+            }
+            assertEquals(sb.toString(), paged.getText(0, paged.getLength()));
+            assertSameLines(plain(sb.toString()), paged);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void lineIndexOverSnapshotUsesTheDocumentsNewlines() throws Exception {
+        String text = DiffEngineTest.randomLines(new Random(3), 300, 6) + "\n";
+        Path file = write(text);
+        try (PagedDocument paged = new PagedDocument(PagedText.open(file, 64, 32))) {
+            PlainDocument plain = plain(text);
+            Random rnd = new Random(11);
+            int step = 0;
+            while (step < 40) {
+                int at = rnd.nextInt(plain.getLength());
+                if (rnd.nextBoolean()) {
+                    int n = Math.min(plain.getLength() - at, rnd.nextInt(12));
+                    plain.remove(at, n);
+                    paged.remove(at, n);
+                } else {
+                    plain.insertString(at, "x\ny", null);
+                    paged.insertString(at, "x\ny", null);
+                }
+                LineIndex expected = LineIndex.of(plain.getText(0, plain.getLength()));
+                LineIndex actual = LineIndex.of(paged.snapshot());
+                assertEquals(expected.lineCount(), actual.lineCount());
+                int line = 0;
+                while (line < expected.lineCount()) {
+                    assertEquals(expected.start(line), actual.start(line));
+                    assertEquals(expected.end(line), actual.end(line));
+                    assertEquals(expected.line(line), actual.line(line));
+                    line = line + 1;
+                }
+                step = step + 1;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        // building the index reads no page: it still works once the file is unmapped
+        Path again = write(text);
+        try {
+            PagedDocument paged = new PagedDocument(PagedText.open(again, 64, 32));
+            CharSequence snapshot = paged.snapshot();
+            paged.close();
+            assertEquals(301, LineIndex.of(snapshot).lineCount());
+        } finally {
+            Files.deleteIfExists(again);
+        }
+    }
+
+    @Test
+    public void writeReplacesTheMappedFile() throws Exception {
+        Path file = write("one\ntwo\nthree\n");
+        try (PagedDocument paged = PagedDocument.open(file)) {
+            paged.insertString(4, "2\n", null);
+            assertTrue(paged.isModified());
+            paged.write(file);
+            assertFalse(paged.isModified());
+            assertEquals("one\n2\ntwo\nthree\n", Files.readString(file));
+            assertEquals("one\n2\ntwo\nthree\n", paged.getText(0, paged.getLength()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void savingOverTheMappedFileReadsBackFromTheNewFile() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < 40) {
+            sb.append("line ").append(i).append(i % 5 == 0 ? " ümlaut" : "").append('\n');
+            i = i + 1;
+        }
+        Path file = write(sb.toString());
+        try (PagedDocument paged = new PagedDocument(PagedText.open(file, 64, 32))) {
+            UndoManager undo = new UndoManager();
+            paged.addUndoableEditListener(undo);
+            paged.insertString(10, "inserted\n", null);
+            paged.remove(100, 20);
+            String saved = paged.getText(0, paged.getLength());
+            paged.write(file);
+            assertFalse(paged.isModified());
+            assertEquals(saved, Files.readString(file));
+
+            // pages are now read from the saved file, so a change to it shows through
+            int last = saved.lastIndexOf('1');
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.wrap(new byte[] { '7' }), saved.substring(0, last).getBytes(StandardCharsets.UTF_8).length);
+            }
+            String changed = saved.substring(0, last) + "7" + saved.substring(last + 1);
+            assertSameLines(plain(changed), paged);
+
+            // edits after the save undo as usual; the ones before it refer to the old file
+            assertFalse(undo.canUndo());
+            paged.insertString(0, "new\n", null);
+            assertTrue(undo.canUndo());
+            undo.undo();
+            assertFalse(undo.canUndo());
+            assertEquals(changed, paged.getText(0, paged.getLength()));
+
+            paged.remove(0, 5);
+            paged.write(file);
+            assertEquals(changed.substring(5), Files.readString(file));
+            assertSameLines(plain(changed.substring(5)), paged);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void refusesFilesThatAreNotUtf8() throws Exception {
+        Path file = Files.createTempFile("paged", ".txt");
+        Files.write(file, "caf\u00e9\n".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1));
+        try (PagedDocument paged = PagedDocument.open(file)) {
+            fail("opened " + paged.getLength() + " chars");
+        } catch (IOException expected) {
+            assertArrayEquals(new byte[] { 'c', 'a', 'f', (byte) 0xe9, '\n' }, Files.readAllBytes(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void pageThatNoLongerDecodesThrowsInsteadOfReplacing() throws Exception {
+        Path file = write("first page\nsecond page\n");
+        try (PagedDocument paged = new PagedDocument(PagedText.open(file, 16, 12))) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.wrap(new byte[] { (byte) 0xff }), 14);
+            }
+            try {
+                fail("read " + paged.getText(0, paged.getLength()));
+            } catch (UncheckedIOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("changed on disk"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void assertSameLines(Document expected, Document actual) throws BadLocationException {
+        assertEquals(expected.getText(0, expected.getLength()), actual.getText(0, actual.getLength()));
+        Element e = expected.getDefaultRootElement();
+        Element a = actual.getDefaultRootElement();
+        assertEquals(e.getElementCount(), a.getElementCount());
+        int i = 0;
+        while (i < e.getElementCount()) {
+            assertEquals(e.getElement(i).getStartOffset(), a.getElement(i).getStartOffset());
+            assertEquals(e.getElement(i).getEndOffset(), a.getElement(i).getEndOffset());
+            i = i + 1;
+        }
+        int offset = 0;
+        while (offset <= expected.getLength()) {
+            assertEquals(e.getElementIndex(offset), a.getElementIndex(offset));
+            offset = offset + 1;
+        }
+    }
+
+    private static PlainDocument plain(String text) throws BadLocationException {
+        PlainDocument doc = new PlainDocument();
+        doc.insertString(0, text, null);
+        return doc;
+    }
+
+    private static Path write(String text) throws IOException {
+        Path file = Files.createTempFile("paged", ".txt");
+        Files.writeString(file, text);
+        return file;
+    }
+}
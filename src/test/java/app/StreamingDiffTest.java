@@ -0,0 +1,83 @@
+package app;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamingDiffTest {
+
+    @Test
+    public void smallWindowsStillTileBothFiles() throws IOException {
+        Random rnd = new Random(5);
+        int iter = 0;
+        while (iter < 50) {
+            String left = DiffEngineTest.randomLines(rnd, rnd.nextInt(300), 6);
+            String right = mutate(rnd, left);
+            DiffEngine.Result res = diff(left, right, 16);
+            DiffEngineTest.assertCovers(res, left, right);
+            iter = iter + 1;
+        }
+    }
+
+    @Test
+    public void windowHoldingWholeFileMatchesEngineCost() throws IOException {
+        Random rnd = new Random(9);
+        int iter = 0;
+        while (iter < 50) {
+            String left = DiffEngineTest.randomLines(rnd, rnd.nextInt(200), 5) + "\n";
+            String right = mutate(rnd, left);
+            DiffEngine.Result res = diff(left, right, 1000);
+            DiffEngineTest.assertCovers(res, left, right);
+            assertEquals(DiffEngineTest.editCost(DiffEngine.diffLines(left, right)), DiffEngineTest.editCost(res));
+            iter = iter + 1;
+        }
+    }
+
+    private static DiffEngine.Result diff(String left, String right, int window) throws IOException {
+        Path l = Files.createTempFile("stream-left", ".txt");
+        Path r = Files.createTempFile("stream-right", ".txt");
+        try {
+            Files.writeString(l, left);
+            Files.writeString(r, right);
+            return StreamingDiff.diff(l, r, window, DiffEngine.Budget.UNLIMITED, DiffEngine.CancelToken.NONE);
+        } finally {
+            Files.deleteIfExists(l);
+            Files.deleteIfExists(r);
+        }
+    }
+
+    /** A copy of text with a few lines replaced, dropped or added. */
+    private static String mutate(Random rnd, String text) {
+        String[] lines = text.split("\n", -1);
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < lines.length) {
+            int roll = rnd.nextInt(20);
+            if (roll == 0) {
+                sb.append("changed ").append(i).append('\n');
+            } else if (roll == 1) {
+                sb.append("added ").append(i).append('\n').append(lines[i]).append('\n');
+            } else if (roll != 2) {
+                sb.append(lines[i]).append('\n');
+            }
+            i = i + 1;
+        }
+        return sb.length() == 0 ? "" : sb.substring(0, sb.length() - 1);
+    }
+
+    @Test
+    public void statusNamesTheOptionsTheStreamLeavesOut() {
+        assertNull(DiffController.offWhenStreaming(0, false, false));
+        assertEquals("insert mode", DiffController.offWhenStreaming(0, true, false));
+        assertEquals("comparison options and move detection",
+                DiffController.offWhenStreaming(LineCompare.IGNORE_CASE, false, true));
+        assertEquals("comparison options, insert mode and move detection",
+                DiffController.offWhenStreaming(LineCompare.IGNORE_WHITESPACE, true, true));
+    }
+}
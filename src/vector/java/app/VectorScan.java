@@ -0,0 +1,35 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD side of {@link ByteScan}: compares a whole vector of bytes against '\n' at
+ * a time, at the widest shape the CPU supports. Lives in the opt-in vector source set
+ * (built with {@code -Pvector}) and is only loaded when the jdk.incubator.vector
+ * module is resolved; the last partial vector is left to the scalar SWAR code.
+ * No use of ++ or -- operators (per user request).
+ */
+final class VectorScan implements ByteScan.Finder {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    VectorScan() {}
+
+    @Override public int indexOf(ByteBuffer buf, int from, int to) {
+        int i = from;
+        while (i + LANES <= to) {
+            VectorMask<Byte> hits = ByteVector.fromByteBuffer(SPECIES, buf, i, ByteOrder.nativeOrder())
+                    .compare(VectorOperators.EQ, (byte) '\n');
+            if (hits.anyTrue()) return i + hits.firstTrue();
+            i = i + LANES;
+        }
+        return ByteScan.indexOfSwar(buf, i, to);
+    }
+}